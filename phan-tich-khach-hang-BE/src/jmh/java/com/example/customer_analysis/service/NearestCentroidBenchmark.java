@@ -0,0 +1,98 @@
+package com.example.customer_analysis.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scalar vs Vector API nearest-centroid kernels on a block of random points,
+ * against the loop they replaced: a sqrt Euclidean distance to every centroid
+ * of a {@code Map<Integer, double[]>}. Run with {@code ./mvnw -Pjmh test-compile exec:exec}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class NearestCentroidBenchmark {
+
+    private static final int POINTS = 1024;
+
+    @Param({"8", "32"})
+    private int features;
+
+    @Param({"4", "8"})
+    private int segments;
+
+    private final NearestCentroid scalar = new ScalarNearestCentroid();
+    private final NearestCentroid vector = new VectorNearestCentroid();
+    private double[] centroids;
+    private Map<Integer, double[]> centroidsBySegment;
+    private double[][] points;
+    private double[] squaredDistances;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        centroids = random.doubles((long) segments * features).toArray();
+        centroidsBySegment = new LinkedHashMap<>();
+        for (int i = 0; i < segments; i++) {
+            centroidsBySegment.put(i, Arrays.copyOfRange(centroids, i * features, (i + 1) * features));
+        }
+        points = new double[POINTS][];
+        for (int i = 0; i < POINTS; i++) {
+            points[i] = random.doubles(features).toArray();
+        }
+        squaredDistances = new double[segments];
+    }
+
+    @Benchmark
+    public int baseline() {
+        int sum = 0;
+        for (double[] point : points) {
+            int nearest = -1;
+            double minDistance = Double.MAX_VALUE;
+            for (Map.Entry<Integer, double[]> entry : centroidsBySegment.entrySet()) {
+                double distance = euclideanDistance(point, entry.getValue());
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    nearest = entry.getKey();
+                }
+            }
+            sum += nearest;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int scalar() {
+        return score(scalar);
+    }
+
+    @Benchmark
+    public int vector() {
+        return score(vector);
+    }
+
+    private static double euclideanDistance(double[] a, double[] b) {
+        double sum = 0.0;
+        for (int i = 0; i < a.length; i++) {
+            double diff = a[i] - b[i];
+            sum += diff * diff;
+        }
+        return Math.sqrt(sum);
+    }
+
+    private int score(NearestCentroid kernel) {
+        int sum = 0;
+        for (double[] point : points) {
+            sum += kernel.nearest(centroids, point, squaredDistances);
+        }
+        return sum;
+    }
+}
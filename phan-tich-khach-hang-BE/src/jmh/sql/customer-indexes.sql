@@ -0,0 +1,189 @@
+/*
+ * Times the queries behind the Customers indexes with and without them:
+ *   - findBySegment                  CustomerRepository.findBySegment (segment lookups)
+ *   - dashboard breakdowns           CustomerAggregateRepository (GROUPING SETS scan)
+ *   - income page, narrow / broad    CustomerQueryRepository.findPage (GET /analysis/customers)
+ *
+ * The script seeds its own customers table, so run it against an empty scratch
+ * database, never the application's. Seeded values come from CHECKSUM of the row
+ * number, so every run sees the same data. For example, with a throwaway server:
+ *
+ *   docker run -d --name customer-bench -e ACCEPT_EULA=Y -e MSSQL_SA_PASSWORD=Bench_12345 \
+ *       -p 1433:1433 mcr.microsoft.com/mssql/server:2022-latest
+ *   sqlcmd -S localhost -U sa -P Bench_12345 -C -Q "CREATE DATABASE customer_bench"
+ *   sqlcmd -S localhost -U sa -P Bench_12345 -C -d customer_bench \
+ *       -i src/jmh/sql/customer-indexes.sql -v Rows=1000000 Iterations=20
+ *
+ * Each query runs once to warm the buffer pool and cache its plan, then
+ * $(Iterations) more times. The last result set lists the average and best
+ * elapsed time per query and phase; the messages carry one STATISTICS IO report
+ * per query and phase for the logical reads. Drop the database afterwards.
+ */
+:on error exit
+SET NOCOUNT ON;
+
+IF OBJECT_ID(N'dbo.customers') IS NOT NULL
+    THROW 50000, 'dbo.customers already exists: run this script against an empty scratch database', 1;
+
+-- Same columns and types as the Hibernate mapping of Customer
+CREATE TABLE dbo.customers (
+    id                    int IDENTITY PRIMARY KEY,
+    education             varchar(255),
+    marital_status        varchar(255),
+    income                float(53),
+    mnt_wines             float(53),
+    mnt_fruits            float(53),
+    mnt_meat_products     float(53),
+    mnt_fish_products     float(53),
+    mnt_sweet_products    float(53),
+    mnt_gold_prods        float(53),
+    num_web_purchases     int,
+    num_catalog_purchases int,
+    num_store_purchases   int,
+    accepted_cmp1         int,
+    accepted_cmp2         int,
+    accepted_cmp3         int,
+    accepted_cmp4         int,
+    accepted_cmp5         int,
+    segment               int,
+    created_at            datetime2(6)
+);
+
+-- About 1% of incomes and 2% of segments are NULL, as after an import that skipped clustering
+WITH digits AS (SELECT d FROM (VALUES (0), (1), (2), (3), (4), (5), (6), (7), (8), (9)) v (d)),
+     numbers AS (
+         SELECT TOP ($(Rows)) ROW_NUMBER() OVER (ORDER BY (SELECT NULL)) AS n
+         FROM digits a CROSS JOIN digits b CROSS JOIN digits c CROSS JOIN digits d
+              CROSS JOIN digits e CROSS JOIN digits f CROSS JOIN digits g CROSS JOIN digits h
+     ),
+     r AS (
+         SELECT n, CHECKSUM(n, 1) & 0x7FFFFFFF AS r1, CHECKSUM(n, 2) & 0x7FFFFFFF AS r2,
+                CHECKSUM(n, 3) & 0x7FFFFFFF AS r3, CHECKSUM(n, 4) & 0x7FFFFFFF AS r4,
+                CHECKSUM(n, 5) & 0x7FFFFFFF AS r5
+         FROM numbers
+     )
+INSERT INTO dbo.customers WITH (TABLOCK) (education, marital_status, income, mnt_wines, mnt_fruits,
+        mnt_meat_products, mnt_fish_products, mnt_sweet_products, mnt_gold_prods, num_web_purchases,
+        num_catalog_purchases, num_store_purchases, accepted_cmp1, accepted_cmp2, accepted_cmp3,
+        accepted_cmp4, accepted_cmp5, segment, created_at)
+SELECT CHOOSE(r1 % 5 + 1, 'Basic', '2n Cycle', 'Graduation', 'Master', 'PhD'),
+       CHOOSE(r2 % 5 + 1, 'Single', 'Married', 'Together', 'Divorced', 'Widow'),
+       CASE WHEN r3 % 100 = 0 THEN NULL ELSE 1000 + r3 % 119000 END,
+       r4 % 1500, r5 % 200, r1 % 1700, r2 % 260, r3 % 260, r4 % 320,
+       r5 % 28, r1 % 29, r2 % 14,
+       r3 % 13 / 12, r4 % 14 / 13, r5 % 15 / 14, r1 % 16 / 15, r2 % 17 / 16,
+       CASE WHEN r4 % 50 = 0 THEN NULL ELSE r5 % 5 END,
+       DATEADD(SECOND, -CAST(n AS int), CAST('2026-01-01' AS datetime2(6)))
+FROM r;
+
+CREATE TABLE #timings (
+    phase   varchar(20),
+    query   varchar(40),
+    avg_ms  decimal(12, 3),
+    best_ms decimal(12, 3)
+);
+
+-- Statements are parameterized the way the application sends them; rows are assigned
+-- to variables so the transfer to the client is not part of the timing
+CREATE TABLE #queries (
+    query     varchar(40),
+    statement nvarchar(max)
+);
+
+INSERT INTO #queries VALUES
+('findBySegment',
+ N'DECLARE @id int, @education varchar(255), @marital_status varchar(255), @income float, @mnt_wines float,
+         @mnt_fruits float, @mnt_meat_products float, @mnt_fish_products float, @mnt_sweet_products float,
+         @mnt_gold_prods float, @num_web_purchases int, @num_catalog_purchases int, @num_store_purchases int,
+         @accepted_cmp1 int, @accepted_cmp2 int, @accepted_cmp3 int, @accepted_cmp4 int, @accepted_cmp5 int,
+         @seg int, @created_at datetime2(6);
+   SELECT @id = id, @education = education, @marital_status = marital_status, @income = income,
+          @mnt_wines = mnt_wines, @mnt_fruits = mnt_fruits, @mnt_meat_products = mnt_meat_products,
+          @mnt_fish_products = mnt_fish_products, @mnt_sweet_products = mnt_sweet_products,
+          @mnt_gold_prods = mnt_gold_prods, @num_web_purchases = num_web_purchases,
+          @num_catalog_purchases = num_catalog_purchases, @num_store_purchases = num_store_purchases,
+          @accepted_cmp1 = accepted_cmp1, @accepted_cmp2 = accepted_cmp2, @accepted_cmp3 = accepted_cmp3,
+          @accepted_cmp4 = accepted_cmp4, @accepted_cmp5 = accepted_cmp5, @seg = segment,
+          @created_at = created_at
+   FROM customers WHERE segment = @segment'),
+('dashboard breakdowns',
+ N'DECLARE @groups int;
+   SELECT @groups = COUNT(*) FROM (
+       SELECT c.segment, GROUPING(c.segment) AS g_segment,
+              c.income_range, GROUPING(c.income_range) AS g_income_range,
+              c.education, GROUPING(c.education) AS g_education,
+              c.marital_status, GROUPING(c.marital_status) AS g_marital_status,
+              COUNT(*) AS customers, AVG(c.spending) AS avg_spending, AVG(c.response_rate) AS avg_response_rate
+       FROM (SELECT segment, education, marital_status,
+                    CASE WHEN income < 20000 THEN ''<20k'' WHEN income < 50000 THEN ''20k-50k''
+                         WHEN income < 80000 THEN ''50k-80k'' ELSE ''80k+'' END AS income_range,
+                    mnt_wines + mnt_fruits + mnt_meat_products + mnt_fish_products + mnt_sweet_products
+                        + mnt_gold_prods AS spending,
+                    (accepted_cmp1 + accepted_cmp2 + accepted_cmp3 + accepted_cmp4 + accepted_cmp5) / 5.0
+                        AS response_rate
+             FROM customers) c
+       GROUP BY GROUPING SETS ((), (c.segment), (c.income_range, c.segment), (c.education, c.segment),
+                              (c.marital_status, c.segment))
+   ) g'),
+('income page, narrow range',
+ N'DECLARE @id int, @income float, @seg int;
+   SELECT TOP (@limit) @id = id, @income = income, @seg = segment
+   FROM customers WHERE id > @afterId AND income >= @minIncome AND income <= @maxIncome ORDER BY id'),
+('income page, broad range',
+ N'DECLARE @id int, @income float, @seg int;
+   SELECT TOP (@limit) @id = id, @income = income, @seg = segment
+   FROM customers WHERE id > @afterId AND income >= @minIncome AND income <= @maxIncome ORDER BY id');
+
+GO
+
+-- Runs every query once under STATISTICS IO, then $(Iterations) timed times, into #timings
+CREATE PROCEDURE #run_phase @phase varchar(20) AS
+BEGIN
+    SET NOCOUNT ON;
+    DECLARE @parameters nvarchar(200) = N'@segment int, @limit int, @afterId int, @minIncome float, @maxIncome float';
+    DECLARE @query varchar(40), @statement nvarchar(max), @minIncome float, @maxIncome float;
+    DECLARE @i int, @started datetime2(7), @elapsed bigint, @total bigint, @best bigint;
+
+    DECLARE queries CURSOR LOCAL FAST_FORWARD FOR SELECT query, statement FROM #queries;
+    OPEN queries;
+    FETCH NEXT FROM queries INTO @query, @statement;
+    WHILE @@FETCH_STATUS = 0
+    BEGIN
+        -- About 0.8% and 75% of the seeded incomes
+        SET @minIncome = CASE WHEN @query LIKE '%narrow%' THEN 85000 ELSE 20000 END;
+        SET @maxIncome = CASE WHEN @query LIKE '%narrow%' THEN 86000 ELSE 110000 END;
+
+        -- Segment 2; a first page of the controller's default size 50 plus its look-ahead row
+        PRINT @phase + ' / ' + @query;
+        SET STATISTICS IO ON;
+        EXEC sp_executesql @statement, @parameters, 2, 51, 0, @minIncome, @maxIncome;
+        SET STATISTICS IO OFF;
+
+        SELECT @i = 0, @total = 0, @best = NULL;
+        WHILE @i < $(Iterations)
+        BEGIN
+            SET @started = SYSDATETIME();
+            EXEC sp_executesql @statement, @parameters, 2, 51, 0, @minIncome, @maxIncome;
+            SET @elapsed = DATEDIFF_BIG(MICROSECOND, @started, SYSDATETIME());
+            SELECT @total += @elapsed, @best = CASE WHEN @best IS NULL OR @elapsed < @best THEN @elapsed ELSE @best END;
+            SET @i += 1;
+        END;
+
+        INSERT INTO #timings VALUES (@phase, @query, @total / 1000.0 / $(Iterations), @best / 1000.0);
+        FETCH NEXT FROM queries INTO @query, @statement;
+    END;
+    CLOSE queries;
+    DEALLOCATE queries;
+END;
+GO
+
+EXEC #run_phase 'without indexes';
+
+-- The indexes declared on the Customer entity
+CREATE INDEX ix_customers_segment_marital_status ON dbo.customers (segment, marital_status);
+CREATE INDEX ix_customers_segment_education ON dbo.customers (segment, education);
+CREATE INDEX ix_customers_income ON dbo.customers (income);
+
+EXEC #run_phase 'with indexes';
+
+SELECT query, phase, avg_ms, best_ms FROM #timings ORDER BY query, phase DESC;
@@ -0,0 +1,51 @@
+package com.example.customer_analysis.config;
+
+import lombok.Data;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Configuration
+@ConfigurationProperties(prefix = "file")
+@Data
+public class FileConfig {
+
+    private String uploadDir = "uploads/";
+    private String parquetDir = "parquet/";
+
+    // Parallel CSV ingest: files at least this large are split across worker threads
+    private boolean parallelIngest = true;
+    private long parallelThresholdBytes = 64L * 1024 * 1024;
+    private int ingestThreads = 0; // 0 = number of available processors
+
+    // Streaming export: rows fetched per round trip, and the Parquet row group buffered per response
+    private int exportFetchSize = 1000;
+    private long exportRowGroupSize = 8L * 1024 * 1024;
+
+    private ParquetWriterSettings parquetWriter = new ParquetWriterSettings();
+
+    public int getEffectiveIngestThreads() {
+        return ingestThreads > 0 ? ingestThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Data
+    public static class ParquetWriterSettings {
+        private CompressionCodecName compression = CompressionCodecName.SNAPPY; // SNAPPY, ZSTD, GZIP, UNCOMPRESSED
+        // Mini-batch KMeans shuffles row groups per epoch; with few, large row groups a file sorted
+        // by cluster is only mixed within ml.mini-batch-shuffle-buffer rows
+        private long rowGroupSize = ParquetWriter.DEFAULT_BLOCK_SIZE;
+        private int pageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+        private int dictionaryPageSize = ParquetWriter.DEFAULT_PAGE_SIZE;
+        private boolean dictionaryEncoding = true;
+        // Columns written without a dictionary, e.g. unique IDs where it only adds overhead
+        private List<String> dictionaryDisabledColumns = new ArrayList<>(List.of("ID"));
+        private List<String> bloomFilterColumns = new ArrayList<>(List.of("ID", "Education", "Marital_Status"));
+        private double bloomFilterFpp = 0.01;
+        // Size each bloom filter from the values actually seen instead of the 1MB maximum
+        private boolean adaptiveBloomFilter = true;
+    }
+}
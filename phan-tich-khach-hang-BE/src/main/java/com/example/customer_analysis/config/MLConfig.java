@@ -1,6 +1,7 @@
 package com.example.customer_analysis.config;
 
 import jakarta.annotation.PostConstruct;
+import com.example.customer_analysis.service.PredictionAuditLog;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -19,6 +20,46 @@ public class MLConfig {
     private String reportDir = "reports/";
     private int defaultClusters = 4;
     private int maxIterations = 100;
+    private double tolerance = 1E-4;
+    // KMeans is run this many times from different seeds and the lowest-distortion result kept
+    private int restarts = 4;
+    private int clusteringThreads = 0; // 0 = number of available processors
+    private int miniBatchSize = 1024;
+    // Mini-batch KMeans stops after this many passes over the file if the centers have not converged
+    private int miniBatchEpochs = 100;
+    // Rows buffered and shuffled between the Parquet row groups and the mini-batches; mini-batches
+    // of a file sorted by cluster only mix rows about this far apart
+    private int miniBatchShuffleBuffer = 65536;
+    // Auto-k tries every k in this range and scores silhouettes on a sample of this many customers
+    private int autoKMinClusters = 2;
+    private int autoKMaxClusters = 8;
+    private int silhouetteSampleSize = 2000;
+    // How often a node asks the DB whether the active prediction model changed
+    private long modelCacheCheckIntervalMs = 5000;
+    // Batch predictions are inserted in JDBC batches of this size
+    private int predictionBatchSize = 500;
+    // Single predictions are written behind by a background thread through a queue of this size;
+    // when it is full the caller waits (BLOCK), the row is dropped (DROP) or appended to the spill file (SPILL)
+    private int auditQueueCapacity = 10000;
+    private long auditFlushIntervalMs = 1000;
+    private PredictionAuditLog.OverflowPolicy auditOverflowPolicy = PredictionAuditLog.OverflowPolicy.SPILL;
+    private String auditSpillFile = "audit/prediction-spill.ndjson";
+    // The writer thread retries inserting spilled rows this often
+    private long auditReplayIntervalMs = 30000;
+    // Rows per round trip when training streams labeled customers from the database
+    private int trainingFetchSize = 5000;
+    // Customers read, scored and updated per chunk (and per transaction) by the re-segmentation job
+    private int resegmentChunkSize = 5000;
+    // A running re-segmentation job refreshes its heartbeat this often; another instance may
+    // fail or resume a RUNNING job only once its heartbeat is older than resegmentStaleAfterMs
+    private long resegmentHeartbeatIntervalMs = 10000;
+    private long resegmentStaleAfterMs = 60000;
+    // Clustered customers are inserted in JDBC batches of this size, one transaction each
+    private int persistBatchSize = 1000;
+
+    public int getEffectiveClusteringThreads() {
+        return clusteringThreads > 0 ? clusteringThreads : Runtime.getRuntime().availableProcessors();
+    }
 
     @PostConstruct
     public void init() {
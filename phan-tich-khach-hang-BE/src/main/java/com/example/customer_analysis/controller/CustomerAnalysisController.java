@@ -1,21 +1,34 @@
 package com.example.customer_analysis.controller;
 
+import com.example.customer_analysis.dto.request.ClusterRequest;
+import com.example.customer_analysis.dto.request.CustomerFilterRequest;
 import com.example.customer_analysis.dto.response.*;
 import com.example.customer_analysis.entity.Customer;
 import com.example.customer_analysis.entity.Segment;
+import com.example.customer_analysis.repository.CustomerQueryRepository;
 import com.example.customer_analysis.repository.CustomerRepository;
 import com.example.customer_analysis.repository.SegmentRepository;
 import com.example.customer_analysis.service.ClusteringService;
+import com.example.customer_analysis.service.CustomerExportService;
+import com.example.customer_analysis.service.DashboardService;
 import com.example.customer_analysis.service.FileService;
 import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +40,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CustomerAnalysisController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+
     @Autowired
     private FileService fileService;
 
@@ -39,6 +55,15 @@ public class CustomerAnalysisController {
     @Autowired
     private SegmentRepository segmentRepository;
 
+    @Autowired
+    private DashboardService dashboardService;
+
+    @Autowired
+    private CustomerQueryRepository customerQueryRepository;
+
+    @Autowired
+    private CustomerExportService customerExportService;
+
     // 1. Upload File
     @PostMapping("/upload")
     public ResponseEntity<?> uploadFile(@RequestParam("file") MultipartFile file) {
@@ -58,10 +83,13 @@ public class CustomerAnalysisController {
 
     // 2. Run Clustering
     @PostMapping("/cluster")
-    public ResponseEntity<String> runClustering(@RequestParam("parquetPath") String parquetPath) {
+    public ResponseEntity<?> runClustering(@ModelAttribute ClusterRequest request) {
+        if (request.getParquetPath() == null || request.getParquetPath().isBlank()) {
+            return ResponseEntity.badRequest().body("parquetPath is required");
+        }
         try {
-            clusteringService.performClustering(parquetPath);
-            return ResponseEntity.ok("Clustering completed successfully");
+            ClusterResponseDTO response = clusteringService.performClustering(request);
+            return ResponseEntity.ok(response);
         } catch (Exception e) {
             log.error("Error during clustering", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -70,106 +98,88 @@ public class CustomerAnalysisController {
     }
 
     // 3. Get Dashboard Data
+    // Served from the in-memory snapshot; a client that sends the current ETag gets 304 Not Modified
     @GetMapping("/dashboard")
-    public ResponseEntity<DashboardDTO> getDashboard() {
-        // Implement dashboard data aggregation
-        DashboardDTO dashboard = new DashboardDTO();
-
-        dashboard.setTotalCustomers(customerRepository.count());
-        // Tổng số khách hàng
-        long totalCustomers = customerRepository.count();
-        dashboard.setTotalCustomers(totalCustomers);
-
-        //  Trung bình chi tiêu (avgSpending)
-        Double avgSpending = customerRepository.findAverageSpending();
-        dashboard.setAvgSpending(avgSpending != null ? avgSpending : 0.0);
-
-        // Tỷ lệ phản hồi chiến dịch marketing (response rate)
-        Double responseRate = customerRepository.findAverageResponseRate();
-        dashboard.setMarketingResponseRate(responseRate != null ? responseRate : 0.0);
-
-        // Phân bố khách hàng theo segment
-        Map<Integer, Long> segmentDistribution = customerRepository.findSegmentDistribution()
-                .stream()
-                .collect(Collectors.toMap(
-                        row -> ((Number) row[0]).intValue(), // segment
-                        row -> (Long) row[1]                // count
-                ));
-        dashboard.setSegmentDistribution(segmentDistribution);
-
-        //Phân bố Income theo Segment (ví dụ nhóm theo khoảng thu nhập)
-        Map<String, Map<Integer, Long>> incomeBySegment = customerRepository.findIncomeBySegment()
-                .stream()
-                .collect(Collectors.groupingBy(
-                        row -> (String) row[0], // income range
-                        Collectors.toMap(
-                                row -> ((Number) row[1]).intValue(), // segment
-                                row -> (Long) row[2]
-                        )
-                ));
-        dashboard.setIncomeBySegment(incomeBySegment);
-
-        // Phân bố Education theo Segment
-        Map<String, Map<Integer, Long>> educationBySegment = customerRepository.findEducationBySegment()
-                .stream()
-                .collect(Collectors.groupingBy(
-                        row -> (String) row[0], // education level
-                        Collectors.toMap(
-                                row -> ((Number) row[1]).intValue(),
-                                row -> (Long) row[2]
-                        )
-                ));
-        dashboard.setEducationBySegment(educationBySegment);
-
-        // Phân bố Marital Status theo Segment
-        Map<String, Map<Integer, Long>> maritalBySegment = customerRepository.findMaritalStatusBySegment()
-                .stream()
-                .collect(Collectors.groupingBy(
-                        row -> (String) row[0], // marital status
-                        Collectors.toMap(
-                                row -> ((Number) row[1]).intValue(),
-                                row -> (Long) row[2]
-                        )
-                ));
-        dashboard.setMaritalStatusBySegment(maritalBySegment);
-
-        //Top segments theo doanh thu trung bình hoặc số lượng khách
-        List<Segment> topSegments = segmentRepository.findTop3ByOrderByAvgSpendingDesc();
-        List<SegmentDTO> topSegmentDTOs = topSegments.stream()
-                .map(segment -> SegmentDTO.builder()
-                        .segmentId(segment.getSegmentId())
-                        .segmentName(segment.getSegmentName())
-                        .avgIncome(segment.getAvgIncome())
-                        .avgSpending(segment.getAvgSpending())
-                        .customerCount(segment.getCustomerCount())
-                        .description(segment.getDescription())
-                        .build())
-                .collect(Collectors.toList());
-        dashboard.setTopSegments(topSegmentDTOs);
-
-        return ResponseEntity.ok(dashboard);
+    public ResponseEntity<DashboardDTO> getDashboard(WebRequest request) {
+        DashboardService.DashboardSnapshot snapshot = dashboardService.getSnapshot();
+        if (request.checkNotModified(snapshot.etag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.etag())
+                .cacheControl(CacheControl.noCache())
+                .body(snapshot.dashboard());
     }
 
     // 4. Get All Customers
+    // Keyset pagination: each page ends with a cursor that resumes after its last customer id
     @GetMapping("/customers")
-    public ResponseEntity<List<CustomerDTO>> getCustomers(
-            @RequestParam(required = false) Integer segment,
-            @RequestParam(required = false) String maritalStatus) {
-
-        List<Customer> customers;
-        if (segment != null) {
-            customers = customerRepository.findBySegment(segment);
-        } else if (maritalStatus != null) {
-            customers = customerRepository.findByMaritalStatus(maritalStatus);
-        } else {
-            customers = customerRepository.findAll();
+    public ResponseEntity<?> getCustomers(@ModelAttribute CustomerFilterRequest filter) {
+        int size = filter.getSize() != null ? filter.getSize() : DEFAULT_PAGE_SIZE;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        int afterId;
+        try {
+            afterId = decodeCursor(filter.getCursor());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid cursor");
         }
 
-        List<CustomerDTO> dtos = customers.stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        // One extra row tells whether another page follows
+        List<CustomerDTO> customers = customerQueryRepository.findPage(filter, afterId, size + 1);
+        boolean hasMore = customers.size() > size;
+        if (hasMore) {
+            customers = customers.subList(0, size);
+        }
 
-        return ResponseEntity.ok(dtos);
+        return ResponseEntity.ok(CustomerPageDTO.builder()
+                .customers(customers)
+                .size(customers.size())
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? encodeCursor(customers.get(customers.size() - 1).getId()) : null)
+                .build());
+    }
+
+    // 4b. Export Customers
+    // Streams every customer matching the filter (size and cursor are ignored) as ndjson, csv or parquet
+    @GetMapping("/customers/export")
+    public ResponseEntity<?> exportCustomers(@ModelAttribute CustomerFilterRequest filter,
+                                             @RequestParam(defaultValue = "ndjson") String format,
+                                             @RequestParam(defaultValue = "false") boolean gzip) {
+        CustomerExportService.Format exportFormat;
+        try {
+            exportFormat = CustomerExportService.Format.parse(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        String filename = "customers." + exportFormat.getExtension() + (gzip ? ".gz" : "");
+        StreamingResponseBody body = out -> customerExportService.export(filter, exportFormat, gzip, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(filename)
+                        .build()
+                        .toString())
+                .body(body);
+    }
+
+    private static String encodeCursor(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("id:" + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0;
+        }
+        String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        if (!decoded.startsWith("id:")) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+        // NumberFormatException is an IllegalArgumentException too
+        return Integer.parseInt(decoded.substring(3));
     }
 
     // 5. Get Customer Details
@@ -3,13 +3,24 @@ import com.example.customer_analysis.dto.request.PredictionRequest;
 import com.example.customer_analysis.dto.request.TrainPredictionModelRequest;
 import com.example.customer_analysis.dto.response.ApiResponse;
 import com.example.customer_analysis.dto.response.PredictionResponse;
+import com.example.customer_analysis.dto.response.ResegmentationJobDTO;
 import com.example.customer_analysis.dto.response.TrainPredictionModelResponse;
+import com.example.customer_analysis.service.PredictionAuditLog;
 import com.example.customer_analysis.service.PredictionModelService;
+import com.example.customer_analysis.service.ResegmentationService;
+import com.fasterxml.jackson.core.JsonParser;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/ml")
@@ -19,6 +30,12 @@ public class MLController {
     @Autowired
     private PredictionModelService predictionModelService;
 
+    @Autowired
+    private ResegmentationService resegmentationService;
+
+    @Autowired
+    private PredictionAuditLog predictionAuditLog;
+
     @PostMapping("/train")
     public ResponseEntity<ApiResponse<TrainPredictionModelResponse>> trainModel(
             @RequestBody TrainPredictionModelRequest request) {
@@ -63,4 +80,81 @@ public class MLController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(apiResponse);
         }
     }
+
+    /**
+     * Scores many customers in one call. The body is a JSON array (application/json)
+     * or one request per line (application/x-ndjson); results are streamed back in the
+     * same order and format.
+     */
+    @PostMapping(value = "/predict/batch",
+            consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<StreamingResponseBody> predictBatch(HttpServletRequest request) throws IOException {
+        boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        JsonParser requests = predictionModelService.openBatch(request.getInputStream(), ndjson);
+
+        StreamingResponseBody body = output -> {
+            try (requests) {
+                predictionModelService.predictBatch(requests, ndjson, output);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    /**
+     * Counters of the write-behind prediction audit log.
+     */
+    @GetMapping("/audit")
+    public ResponseEntity<ApiResponse<Map<String, Long>>> getAuditStats() {
+        ApiResponse<Map<String, Long>> apiResponse = new ApiResponse<>();
+        apiResponse.setCode(HttpStatus.OK.value());
+        apiResponse.setMessage("Prediction audit log status");
+        apiResponse.setData(Map.of(
+                "queueSize", (long) predictionAuditLog.getQueueSize(),
+                "droppedCount", predictionAuditLog.getDroppedCount(),
+                "lostCount", predictionAuditLog.getLostCount(),
+                "deadLetterCount", predictionAuditLog.getDeadLetterCount()));
+        return ResponseEntity.ok(apiResponse);
+    }
+
+    /**
+     * Starts a background job that re-assigns every customer's segment with the active model.
+     */
+    @PostMapping("/resegment")
+    public ResponseEntity<ApiResponse<ResegmentationJobDTO>> startResegmentation() {
+        return resegmentationResponse(resegmentationService::startJob, "Re-segmentation job started");
+    }
+
+    @PostMapping("/resegment/{jobId}/resume")
+    public ResponseEntity<ApiResponse<ResegmentationJobDTO>> resumeResegmentation(@PathVariable String jobId) {
+        return resegmentationResponse(() -> resegmentationService.resumeJob(jobId), "Re-segmentation job resumed");
+    }
+
+    @GetMapping("/resegment/{jobId}")
+    public ResponseEntity<ApiResponse<ResegmentationJobDTO>> getResegmentation(@PathVariable String jobId) {
+        return resegmentationResponse(() -> resegmentationService.getJob(jobId), "Re-segmentation job status");
+    }
+
+    private ResponseEntity<ApiResponse<ResegmentationJobDTO>> resegmentationResponse(
+            Supplier<ResegmentationJobDTO> action, String message) {
+        ApiResponse<ResegmentationJobDTO> apiResponse = new ApiResponse<>();
+        try {
+            apiResponse.setCode(HttpStatus.OK.value());
+            apiResponse.setMessage(message);
+            apiResponse.setData(action.get());
+            return ResponseEntity.ok(apiResponse);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            HttpStatus status = e instanceof IllegalArgumentException ? HttpStatus.NOT_FOUND : HttpStatus.CONFLICT;
+            apiResponse.setCode(status.value());
+            apiResponse.setMessage(e.getMessage());
+            return ResponseEntity.status(status).body(apiResponse);
+        } catch (Exception e) {
+            log.error("Error in re-segmentation job request", e);
+            apiResponse.setCode(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            apiResponse.setMessage("Re-segmentation request failed: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(apiResponse);
+        }
+    }
 }
@@ -6,7 +6,18 @@ import java.util.List;
 
 @Data
 public class ClusterRequest {
+    public enum Algorithm { KMEANS, MINI_BATCH }
+
     private String parquetPath;
-    private Integer numClusters; // Default: 4
+    private Integer numClusters; // Default: ml.default-clusters
+    private Integer maxIterations; // KMEANS only, default: ml.max-iterations
+    private Double tolerance; // Default: ml.tolerance
+    private Integer restarts; // Default: ml.restarts
+    private Algorithm algorithm = Algorithm.KMEANS; // MINI_BATCH streams the Parquet file instead of loading it
+    private Integer batchSize; // Mini-batch size, default: ml.mini-batch-size
+    private Integer epochs; // MINI_BATCH: max passes over the file, default: ml.mini-batch-epochs
+    private Boolean autoK = false; // Pick k by silhouette instead of using numClusters (KMEANS only)
+    private Integer minClusters; // Default: ml.auto-k-min-clusters
+    private Integer maxClusters; // Default: ml.auto-k-max-clusters
     private List<String> features; // Optional: specify which features to use for clustering
 }
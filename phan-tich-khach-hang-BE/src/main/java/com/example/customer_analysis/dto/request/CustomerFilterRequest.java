@@ -9,6 +9,6 @@ public class CustomerFilterRequest {
     private String education;
     private Double minIncome;
     private Double maxIncome;
-    private Integer page;
+    private String cursor; // nextCursor of the previous page; omit for the first page
     private Integer size;
 }
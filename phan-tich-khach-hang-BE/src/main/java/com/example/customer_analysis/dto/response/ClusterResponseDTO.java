@@ -9,8 +9,11 @@ import java.util.List;
 @Builder
 public class ClusterResponseDTO {
     private String message;
+    private String algorithm;
     private Integer numClusters;
     private Integer totalCustomers;
     private List<SegmentDTO> segments;
     private Long processingTimeMs;
+    private ConvergenceReportDTO convergence; // Only for mini-batch runs
+    private List<KScoreDTO> scoresByK; // Only for auto-k runs: score of every k tried
 }
@@ -0,0 +1,17 @@
+package com.example.customer_analysis.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class ConvergenceReportDTO {
+    private Integer epochs;           // Full passes over the data
+    private Long miniBatches;
+    private Integer batchSize;
+    private Boolean converged;        // Center shift fell below the tolerance before max iterations
+    private Double finalCenterShift;  // Summed squared center movement in the last epoch
+    private List<Double> inertiaHistory; // Mean squared distance to the assigned center, per epoch
+}
@@ -0,0 +1,15 @@
+package com.example.customer_analysis.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class CustomerPageDTO {
+    private List<CustomerDTO> customers;
+    private Integer size;
+    private Boolean hasMore;
+    private String nextCursor; // Pass back as "cursor" to get the next page; null on the last page
+}
@@ -0,0 +1,12 @@
+package com.example.customer_analysis.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class KScoreDTO {
+    private Integer k;
+    private Double inertia;    // Mean squared distance to the assigned center (elbow curve)
+    private Double silhouette; // Mean silhouette on the sampled customers, higher is better
+}
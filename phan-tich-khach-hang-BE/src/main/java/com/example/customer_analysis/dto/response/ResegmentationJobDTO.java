@@ -0,0 +1,23 @@
+package com.example.customer_analysis.dto.response;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+public class ResegmentationJobDTO {
+    private String jobId;
+    private String modelId;
+    private String status;
+    private Long processedCustomers;
+    private Long totalCustomers;
+    private Double progressPercent;
+    private Double customersPerSecond;
+    private Integer lastCustomerId;
+    private LocalDateTime startedAt;
+    private LocalDateTime updatedAt;
+    private LocalDateTime finishedAt;
+    private String error;
+}
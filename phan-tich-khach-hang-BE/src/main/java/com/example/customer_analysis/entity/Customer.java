@@ -8,7 +8,13 @@ import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "Customers")
+// Indexes follow the access paths: the segment x marital status / education
+// breakdowns (either also serves segment-only lookups), and income range filters
+@Table(name = "Customers", indexes = {
+        @Index(name = "ix_customers_segment_marital_status", columnList = "segment, marital_status"),
+        @Index(name = "ix_customers_segment_education", columnList = "segment, education"),
+        @Index(name = "ix_customers_income", columnList = "income")
+})
 @Getter
 @Setter
 public class Customer {
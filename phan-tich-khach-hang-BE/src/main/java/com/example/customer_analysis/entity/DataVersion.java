@@ -0,0 +1,25 @@
+package com.example.customer_analysis.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * A counter bumped whenever the data behind a cached view changes, so every
+ * node can tell whether its cached copy is stale.
+ */
+@Entity
+@Table(name = "DataVersions")
+@Getter
+@Setter
+public class DataVersion {
+    @Id
+    private String name; // e.g. "dashboard"
+
+    @Column(nullable = false)
+    private Long version = 0L;
+
+    private LocalDateTime updatedAt;
+}
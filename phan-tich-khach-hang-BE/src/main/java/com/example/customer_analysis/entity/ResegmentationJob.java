@@ -0,0 +1,56 @@
+package com.example.customer_analysis.entity;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "ResegmentationJobs")
+@Getter
+@Setter
+public class ResegmentationJob {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(nullable = false, unique = true)
+    private String jobId;
+
+    @Column(nullable = false)
+    private String modelId;
+
+    @Column(nullable = false)
+    private String status; // RUNNING, COMPLETED, FAILED
+
+    @Column(nullable = false)
+    private Integer lastCustomerId = 0; // Highest customer id whose update is committed
+
+    @Column(nullable = false)
+    private Long processedCustomers = 0L;
+
+    @Column
+    private Long totalCustomers;
+
+    @Column(columnDefinition = "TEXT")
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column
+    private LocalDateTime updatedAt;
+
+    @Column
+    private LocalDateTime finishedAt;
+
+    @Column
+    private String owner; // Instance that runs the job while it is RUNNING
+
+    @Column
+    private LocalDateTime heartbeatAt; // Refreshed by the owner while the job runs
+
+    @Column
+    private Long runningTimeMs = 0L; // Summed over all runs of the job, for throughput
+}
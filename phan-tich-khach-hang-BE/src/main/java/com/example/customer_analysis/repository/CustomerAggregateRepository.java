@@ -0,0 +1,117 @@
+package com.example.customer_analysis.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Computes every dashboard aggregate with one scan of the customers table, using
+ * GROUPING SETS: the overall count and averages, customers per segment, and one
+ * per-segment breakdown for each entry of {@link #BREAKDOWNS}. A new breakdown is
+ * one more grouping set in the same scan, not another query.
+ */
+@Repository
+public class CustomerAggregateRepository {
+
+    // Breakdown name -> column of the derived table below
+    private static final Map<String, String> BREAKDOWNS = new LinkedHashMap<>();
+
+    static {
+        BREAKDOWNS.put("income", "income_range");
+        BREAKDOWNS.put("education", "education");
+        BREAKDOWNS.put("maritalStatus", "marital_status");
+    }
+
+    // Derived columns are computed once per row; NULL amounts make the row's sum NULL, which AVG skips
+    private static final String CUSTOMER_ROWS = "SELECT segment, education, marital_status, "
+            + "CASE WHEN income < 20000 THEN '<20k' "
+            + "WHEN income < 50000 THEN '20k-50k' "
+            + "WHEN income < 80000 THEN '50k-80k' "
+            + "ELSE '80k+' END AS income_range, "
+            + "mnt_wines + mnt_fruits + mnt_meat_products + mnt_fish_products + mnt_sweet_products + mnt_gold_prods "
+            + "AS spending, "
+            + "(accepted_cmp1 + accepted_cmp2 + accepted_cmp3 + accepted_cmp4 + accepted_cmp5) / 5.0 AS response_rate "
+            + "FROM customers";
+
+    private static final String SQL = buildQuery();
+
+    public record DashboardAggregates(long totalCustomers,
+                                      Double avgSpending,
+                                      Double avgResponseRate,
+                                      Map<Integer, Long> segmentDistribution,
+                                      Map<String, Map<String, Map<Integer, Long>>> breakdowns) {
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private static String buildQuery() {
+        String breakdownColumns = BREAKDOWNS.values().stream()
+                .map(column -> "c." + column + ", GROUPING(c." + column + ") AS g_" + column)
+                .collect(Collectors.joining(", "));
+        String breakdownSets = BREAKDOWNS.values().stream()
+                .map(column -> ", (c." + column + ", c.segment)")
+                .collect(Collectors.joining());
+        return "SELECT c.segment, GROUPING(c.segment) AS g_segment, " + breakdownColumns + ", "
+                + "COUNT(*) AS customers, AVG(c.spending) AS avg_spending, AVG(c.response_rate) AS avg_response_rate "
+                + "FROM (" + CUSTOMER_ROWS + ") c "
+                + "GROUP BY GROUPING SETS ((), (c.segment)" + breakdownSets + ")";
+    }
+
+    /**
+     * Customers with no segment (or a NULL breakdown value) are counted in the
+     * totals but left out of the per-segment maps.
+     */
+    public DashboardAggregates aggregate() {
+        long[] total = new long[1];
+        Double[] averages = new Double[2];
+        Map<Integer, Long> segmentDistribution = new HashMap<>();
+        Map<String, Map<String, Map<Integer, Long>>> breakdowns = new LinkedHashMap<>();
+        BREAKDOWNS.keySet().forEach(name -> breakdowns.put(name, new HashMap<>()));
+
+        jdbcTemplate.query(SQL, (RowCallbackHandler) rs -> {
+            boolean bySegment = rs.getInt("g_segment") == 0;
+            String breakdown = null;
+            String value = null;
+            for (Map.Entry<String, String> entry : BREAKDOWNS.entrySet()) {
+                if (rs.getInt("g_" + entry.getValue()) == 0) {
+                    breakdown = entry.getKey();
+                    value = rs.getString(entry.getValue());
+                }
+            }
+            long customers = rs.getLong("customers");
+
+            if (!bySegment) {
+                // The () grouping set: the whole table
+                total[0] = customers;
+                averages[0] = nullableDouble(rs, "avg_spending");
+                averages[1] = nullableDouble(rs, "avg_response_rate");
+                return;
+            }
+            int segment = rs.getInt("segment");
+            if (rs.wasNull()) {
+                return;
+            }
+            if (breakdown == null) {
+                segmentDistribution.put(segment, customers);
+            } else if (value != null) {
+                breakdowns.get(breakdown).computeIfAbsent(value, k -> new HashMap<>()).put(segment, customers);
+            }
+        });
+
+        return new DashboardAggregates(total[0], averages[0], averages[1], segmentDistribution, breakdowns);
+    }
+
+    private static Double nullableDouble(ResultSet rs, String column) throws SQLException {
+        double value = rs.getDouble(column);
+        return rs.wasNull() ? null : value;
+    }
+}
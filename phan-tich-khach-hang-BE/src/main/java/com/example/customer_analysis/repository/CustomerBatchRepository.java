@@ -0,0 +1,95 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.entity.Customer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Plain JDBC batch writes for customers. Hibernate cannot batch inserts of
+ * IDENTITY entities, so bulk loads go through here instead of saveAll().
+ */
+@Repository
+public class CustomerBatchRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO customers (education, marital_status, income, "
+            + "mnt_wines, mnt_fruits, mnt_meat_products, mnt_fish_products, mnt_sweet_products, mnt_gold_prods, "
+            + "num_web_purchases, num_catalog_purchases, num_store_purchases, accepted_cmp1, accepted_cmp2, "
+            + "accepted_cmp3, accepted_cmp4, accepted_cmp5, segment, created_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int MAX_IN_LIST = 2000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts all customers as one JDBC batch in its own transaction. Generated
+     * ids are not read back.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void insertAll(List<Customer> customers) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, customers, customers.size(), this::bind);
+    }
+
+    private void bind(PreparedStatement ps, Customer c) throws SQLException {
+        ps.setString(1, c.getEducation());
+        ps.setString(2, c.getMaritalStatus());
+        ps.setObject(3, c.getIncome(), Types.DOUBLE);
+        ps.setObject(4, c.getMntWines(), Types.DOUBLE);
+        ps.setObject(5, c.getMntFruits(), Types.DOUBLE);
+        ps.setObject(6, c.getMntMeatProducts(), Types.DOUBLE);
+        ps.setObject(7, c.getMntFishProducts(), Types.DOUBLE);
+        ps.setObject(8, c.getMntSweetProducts(), Types.DOUBLE);
+        ps.setObject(9, c.getMntGoldProds(), Types.DOUBLE);
+        ps.setObject(10, c.getNumWebPurchases(), Types.INTEGER);
+        ps.setObject(11, c.getNumCatalogPurchases(), Types.INTEGER);
+        ps.setObject(12, c.getNumStorePurchases(), Types.INTEGER);
+        ps.setObject(13, c.getAcceptedCmp1(), Types.INTEGER);
+        ps.setObject(14, c.getAcceptedCmp2(), Types.INTEGER);
+        ps.setObject(15, c.getAcceptedCmp3(), Types.INTEGER);
+        ps.setObject(16, c.getAcceptedCmp4(), Types.INTEGER);
+        ps.setObject(17, c.getAcceptedCmp5(), Types.INTEGER);
+        ps.setObject(18, c.getSegment(), Types.INTEGER);
+        ps.setTimestamp(19, c.getCreatedAt() != null ? Timestamp.valueOf(c.getCreatedAt()) : null);
+    }
+
+    /**
+     * Sets {@code segments[i]} on the customer with id {@code ids[i]}, as one
+     * UPDATE ... WHERE id IN (...) per segment and id chunk. Runs in the caller's
+     * transaction.
+     */
+    public void updateSegments(int[] ids, int[] segments) {
+        Map<Integer, List<Integer>> idsBySegment = new TreeMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            idsBySegment.computeIfAbsent(segments[i], k -> new ArrayList<>()).add(ids[i]);
+        }
+        for (Map.Entry<Integer, List<Integer>> entry : idsBySegment.entrySet()) {
+            List<Integer> segmentIds = entry.getValue();
+            // SQL Server allows 2100 parameters per statement
+            for (int from = 0; from < segmentIds.size(); from += MAX_IN_LIST) {
+                List<Integer> chunk = segmentIds.subList(from, Math.min(from + MAX_IN_LIST, segmentIds.size()));
+                String sql = "UPDATE customers SET segment = ? WHERE id IN ("
+                        + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+                Object[] args = new Object[chunk.size() + 1];
+                args[0] = entry.getKey();
+                for (int i = 0; i < chunk.size(); i++) {
+                    args[i + 1] = chunk.get(i);
+                }
+                jdbcTemplate.update(sql, args);
+            }
+        }
+    }
+}
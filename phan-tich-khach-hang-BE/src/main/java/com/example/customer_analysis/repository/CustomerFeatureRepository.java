@@ -0,0 +1,127 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.service.FeatureMatrix;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Forward-only JDBC reads of customer feature columns. Rows are handed to the
+ * caller one at a time and never become entities, so memory stays flat however
+ * many customers there are.
+ */
+@Repository
+public class CustomerFeatureRepository {
+
+    // Numeric columns of the customers table that features can be computed from
+    private static final Set<String> NUMERIC_COLUMNS = FeatureMatrix.customerColumns().stream()
+            .map(CustomerFeatureRepository::snakeCase)
+            .collect(Collectors.toUnmodifiableSet());
+
+    @FunctionalInterface
+    public interface LabeledRowHandler {
+        /**
+         * @param values the requested columns in request order, NULL read as 0; reused between rows
+         */
+        void accept(int segment, double[] values);
+    }
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Customers table column for a Parquet/feature column name such as "MntWines".
+     */
+    public static String columnName(String featureColumn) {
+        String column = snakeCase(featureColumn);
+        if (!NUMERIC_COLUMNS.contains(column)) {
+            throw new IllegalArgumentException("Unknown customer column: " + featureColumn);
+        }
+        return column;
+    }
+
+    private static String snakeCase(String featureColumn) {
+        return featureColumn.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase();
+    }
+
+    /**
+     * Streams the given columns of every customer with a segment.
+     *
+     * @param columns   customers table columns, as returned by {@link #columnName}
+     * @param fetchSize rows the driver fetches per round trip
+     * @return number of rows read
+     */
+    @Transactional(readOnly = true)
+    public long forEachLabeled(List<String> columns, int fetchSize, LabeledRowHandler handler) {
+        checkColumns(columns);
+        String select = columns.stream().map(column -> ", " + column).collect(Collectors.joining());
+        String sql = "SELECT segment" + select + " FROM customers WHERE segment IS NOT NULL";
+
+        double[] values = new double[columns.size()];
+        long[] rows = new long[1];
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            for (int j = 0; j < values.length; j++) {
+                // getDouble reads NULL as 0, the same as the feature extractors
+                values[j] = rs.getDouble(j + 2);
+            }
+            handler.accept(rs.getInt(1), values);
+            rows[0]++;
+        });
+        return rows[0];
+    }
+
+    /**
+     * Ids and requested columns of customers in a page of the table.
+     *
+     * @param values one row per id, the columns in request order, NULL read as 0
+     */
+    public record FeaturePage(int[] ids, double[][] values) {
+
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * Keyset pagination over all customers: the first {@code limit} rows with an id
+     * greater than {@code afterId}, in id order.
+     */
+    public FeaturePage findPageAfter(List<String> columns, int afterId, int limit) {
+        checkColumns(columns);
+        String select = columns.stream().map(column -> ", " + column).collect(Collectors.joining());
+        String sql = "SELECT TOP (?) id" + select + " FROM customers WHERE id > ? ORDER BY id";
+
+        List<Integer> ids = new ArrayList<>(limit);
+        List<double[]> rows = new ArrayList<>(limit);
+        jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+            ids.add(rs.getInt(1));
+            double[] values = new double[columns.size()];
+            for (int j = 0; j < values.length; j++) {
+                values[j] = rs.getDouble(j + 2);
+            }
+            rows.add(values);
+        }, limit, afterId);
+        return new FeaturePage(ids.stream().mapToInt(Integer::intValue).toArray(), rows.toArray(double[][]::new));
+    }
+
+    private static void checkColumns(List<String> columns) {
+        columns.forEach(column -> {
+            if (!NUMERIC_COLUMNS.contains(column)) {
+                throw new IllegalArgumentException("Unknown customer column: " + column);
+            }
+        });
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.dto.request.CustomerFilterRequest;
+import com.example.customer_analysis.dto.response.CustomerDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Filtered customer reads that go straight to {@link CustomerDTO}, selecting
+ * only the columns the DTO shows. Pages are keyset-paginated on id, so any page
+ * costs the same index seek as the first one.
+ */
+@Repository
+public class CustomerQueryRepository {
+
+    private static final String COLUMNS = "id, education, marital_status, income, mnt_wines, mnt_fruits, "
+            + "mnt_meat_products, mnt_fish_products, mnt_sweet_products, mnt_gold_prods, num_web_purchases, "
+            + "num_catalog_purchases, num_store_purchases, accepted_cmp1, accepted_cmp2, accepted_cmp3, "
+            + "accepted_cmp4, accepted_cmp5, segment";
+
+    private static final RowMapper<CustomerDTO> DTO_MAPPER = CustomerQueryRepository::toDTO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Up to {@code limit} customers matching {@code filter} with an id greater than
+     * {@code afterId}, in id order.
+     */
+    public List<CustomerDTO> findPage(CustomerFilterRequest filter, int afterId, int limit) {
+        List<Object> args = new ArrayList<>();
+        args.add(limit);
+        args.add(afterId);
+        String sql = "SELECT TOP (?) " + COLUMNS + " FROM customers WHERE id > ?"
+                + filterConditions(filter, args) + " ORDER BY id";
+        return jdbcTemplate.query(sql, DTO_MAPPER, args.toArray());
+    }
+
+    /**
+     * Streams every customer matching {@code filter} to {@code consumer}, in id order,
+     * over a forward-only cursor that fetches {@code fetchSize} rows per round trip.
+     */
+    public void forEach(CustomerFilterRequest filter, int fetchSize, Consumer<CustomerDTO> consumer) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT " + COLUMNS + " FROM customers WHERE 1 = 1" + filterConditions(filter, args) + " ORDER BY id";
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(toDTO(rs, 0)));
+    }
+
+    /**
+     * " AND ..." conditions for every filter that is set; their values are appended to {@code args}.
+     */
+    private static String filterConditions(CustomerFilterRequest filter, List<Object> args) {
+        StringBuilder where = new StringBuilder();
+        if (filter.getSegment() != null) {
+            where.append(" AND segment = ?");
+            args.add(filter.getSegment());
+        }
+        if (filter.getMaritalStatus() != null) {
+            where.append(" AND marital_status = ?");
+            args.add(filter.getMaritalStatus());
+        }
+        if (filter.getEducation() != null) {
+            where.append(" AND education = ?");
+            args.add(filter.getEducation());
+        }
+        if (filter.getMinIncome() != null) {
+            where.append(" AND income >= ?");
+            args.add(filter.getMinIncome());
+        }
+        if (filter.getMaxIncome() != null) {
+            where.append(" AND income <= ?");
+            args.add(filter.getMaxIncome());
+        }
+        return where.toString();
+    }
+
+    private static CustomerDTO toDTO(ResultSet rs, int rowNum) throws SQLException {
+        CustomerDTO dto = new CustomerDTO();
+        dto.setId(rs.getInt("id"));
+        dto.setEducation(rs.getString("education"));
+        dto.setMaritalStatus(rs.getString("marital_status"));
+        dto.setIncome(rs.getObject("income", Double.class));
+        dto.setMntWines(rs.getObject("mnt_wines", Double.class));
+        dto.setMntFruits(rs.getObject("mnt_fruits", Double.class));
+        dto.setMntMeatProducts(rs.getObject("mnt_meat_products", Double.class));
+        dto.setMntFishProducts(rs.getObject("mnt_fish_products", Double.class));
+        dto.setMntSweetProducts(rs.getObject("mnt_sweet_products", Double.class));
+        dto.setMntGoldProds(rs.getObject("mnt_gold_prods", Double.class));
+        dto.setNumWebPurchases(rs.getObject("num_web_purchases", Integer.class));
+        dto.setNumCatalogPurchases(rs.getObject("num_catalog_purchases", Integer.class));
+        dto.setNumStorePurchases(rs.getObject("num_store_purchases", Integer.class));
+        dto.setAcceptedCmp1(rs.getObject("accepted_cmp1", Integer.class));
+        dto.setAcceptedCmp2(rs.getObject("accepted_cmp2", Integer.class));
+        dto.setAcceptedCmp3(rs.getObject("accepted_cmp3", Integer.class));
+        dto.setAcceptedCmp4(rs.getObject("accepted_cmp4", Integer.class));
+        dto.setAcceptedCmp5(rs.getObject("accepted_cmp5", Integer.class));
+        dto.setSegment(rs.getObject("segment", Integer.class));
+        dto.setTotalSpending(sum(dto.getMntWines(), dto.getMntFruits(), dto.getMntMeatProducts(),
+                dto.getMntFishProducts(), dto.getMntSweetProducts(), dto.getMntGoldProds()));
+        dto.setTotalCampaignAccepted((int) sum(dto.getAcceptedCmp1(), dto.getAcceptedCmp2(), dto.getAcceptedCmp3(),
+                dto.getAcceptedCmp4(), dto.getAcceptedCmp5()));
+        return dto;
+    }
+
+    // Missing amounts count as 0, like the clustering features
+    private static double sum(Number... values) {
+        double sum = 0;
+        for (Number value : values) {
+            if (value != null) {
+                sum += value.doubleValue();
+            }
+        }
+        return sum;
+    }
+}
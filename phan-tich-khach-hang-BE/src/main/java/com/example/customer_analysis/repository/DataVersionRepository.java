@@ -0,0 +1,18 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.entity.DataVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface DataVersionRepository extends JpaRepository<DataVersion, String> {
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE DataVersion v SET v.version = v.version + 1, v.updatedAt = CURRENT_TIMESTAMP WHERE v.name = :name")
+    int increment(@Param("name") String name);
+}
@@ -0,0 +1,48 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.entity.Prediction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Plain JDBC batch inserts for predictions, used when many predictions are
+ * written at once (Hibernate cannot batch IDENTITY inserts).
+ */
+@Repository
+public class PredictionBatchRepository {
+
+    private static final String INSERT_SQL = "INSERT INTO predictions (prediction_id, model_id, customer_id, "
+            + "predicted_segment, confidence, input_data, probabilities, predicted_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts all predictions as one JDBC batch in its own transaction.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void insertAll(List<Prediction> predictions) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, predictions, predictions.size(), this::bind);
+    }
+
+    private void bind(PreparedStatement ps, Prediction p) throws SQLException {
+        ps.setString(1, p.getPredictionId());
+        ps.setString(2, p.getModelId());
+        ps.setObject(3, p.getCustomerId(), Types.INTEGER);
+        ps.setInt(4, p.getPredictedSegment());
+        ps.setObject(5, p.getConfidence(), Types.DOUBLE);
+        ps.setString(6, p.getInputData());
+        ps.setString(7, p.getProbabilities());
+        ps.setTimestamp(8, Timestamp.valueOf(p.getPredictedAt()));
+    }
+}
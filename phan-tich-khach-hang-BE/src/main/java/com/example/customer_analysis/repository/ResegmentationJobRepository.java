@@ -0,0 +1,51 @@
+package com.example.customer_analysis.repository;
+
+import com.example.customer_analysis.entity.ResegmentationJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ResegmentationJobRepository extends JpaRepository<ResegmentationJob, Integer> {
+  Optional<ResegmentationJob> findByJobId(String jobId);
+
+  /**
+   * Takes over a failed job, or a running one whose owner stopped sending heartbeats.
+   *
+   * @return 1 if this owner now runs the job, 0 if it is running elsewhere or not resumable
+   */
+  @Modifying(clearAutomatically = true)
+  @Transactional
+  @Query("UPDATE ResegmentationJob j SET j.status = 'RUNNING', j.owner = :owner, j.heartbeatAt = :now, "
+      + "j.updatedAt = :now, j.error = NULL WHERE j.jobId = :jobId AND (j.status = 'FAILED' "
+      + "OR (j.status = 'RUNNING' AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)))")
+  int claim(@Param("jobId") String jobId, @Param("owner") String owner, @Param("now") LocalDateTime now,
+            @Param("staleBefore") LocalDateTime staleBefore);
+
+  /**
+   * Refreshes the heartbeat of a job this owner is running.
+   *
+   * @return 0 if the job is no longer running under this owner
+   */
+  @Modifying
+  @Transactional
+  @Query("UPDATE ResegmentationJob j SET j.heartbeatAt = :now WHERE j.jobId = :jobId "
+      + "AND j.owner = :owner AND j.status = 'RUNNING'")
+  int heartbeat(@Param("jobId") String jobId, @Param("owner") String owner, @Param("now") LocalDateTime now);
+
+  /**
+   * Fails running jobs whose owner stopped sending heartbeats before {@code staleBefore}.
+   */
+  @Modifying
+  @Transactional
+  @Query("UPDATE ResegmentationJob j SET j.status = 'FAILED', j.error = :error, j.updatedAt = :now "
+      + "WHERE j.status = 'RUNNING' AND (j.heartbeatAt IS NULL OR j.heartbeatAt < :staleBefore)")
+  int failStale(@Param("staleBefore") LocalDateTime staleBefore, @Param("now") LocalDateTime now,
+                @Param("error") String error);
+}
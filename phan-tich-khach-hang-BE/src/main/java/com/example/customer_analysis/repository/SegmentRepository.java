@@ -3,6 +3,7 @@ package com.example.customer_analysis.repository;
 import com.example.customer_analysis.entity.Segment;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 import java.util.Optional;
@@ -10,4 +11,14 @@ import java.util.Optional;
 public interface SegmentRepository extends JpaRepository<Segment, Integer> {
     Optional<Segment> findBySegmentId(Integer segmentId);
     List<Segment> findTop3ByOrderByAvgSpendingDesc();
-}
\ No newline at end of file
+
+    /**
+     * Replaces every saved segment with {@code segments} in one transaction, so a
+     * run with fewer clusters leaves no segments of an earlier, larger run behind.
+     */
+    @Transactional
+    default List<Segment> replaceAll(List<Segment> segments) {
+        deleteAllInBatch();
+        return saveAll(segments);
+    }
+}
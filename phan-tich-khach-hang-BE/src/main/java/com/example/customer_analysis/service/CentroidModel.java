@@ -0,0 +1,206 @@
+package com.example.customer_analysis.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Nearest-centroid prediction model and its binary file format. The file is
+ * little-endian:
+ * <pre>
+ *   int    magic ("CAPM")
+ *   short  format version
+ *   short  reserved
+ *   int    feature count (d)
+ *   int    segment count (k)
+ *   d x    { int length, UTF-8 bytes }   feature names
+ *   d x    { double min, double max }    normalization params
+ *   k x    int                           segment ids, ascending
+ *   padding to a multiple of 8 bytes
+ *   k x d  double                        centroids, row-major
+ * </pre>
+ * A model is a few kilobytes, so loading reads the whole file in one call and
+ * decodes it into heap arrays, with no per-field stream reads or Java
+ * deserialization. The centroid matrix (k x d doubles) becomes one flat array
+ * for the {@link NearestCentroid} kernel.
+ */
+public final class CentroidModel {
+
+    private static final int MAGIC = 0x4D504143; // "CAPM" read as a little-endian int
+    private static final short VERSION = 1;
+
+    private final List<String> features;
+    private final double[] mins;
+    private final double[] maxs;
+    private final int[] segmentIds;
+    private final double[] centroids;
+
+    private CentroidModel(List<String> features, double[] mins, double[] maxs, int[] segmentIds,
+                          double[] centroids) {
+        this.features = List.copyOf(features);
+        this.mins = mins;
+        this.maxs = maxs;
+        this.segmentIds = segmentIds;
+        this.centroids = centroids;
+    }
+
+    /**
+     * @param centroids one row per segment id, in the same order as {@code segmentIds}
+     */
+    public static CentroidModel of(List<String> features, double[] mins, double[] maxs, int[] segmentIds,
+                                   double[][] centroids) {
+        int d = features.size();
+        if (mins.length != d || maxs.length != d || centroids.length != segmentIds.length) {
+            throw new IllegalArgumentException("Model dimensions do not match: " + d + " features, "
+                    + segmentIds.length + " segments, " + centroids.length + " centroids");
+        }
+        double[] matrix = new double[segmentIds.length * d];
+        for (int i = 0; i < centroids.length; i++) {
+            if (centroids[i].length != d) {
+                throw new IllegalArgumentException("Centroid has " + centroids[i].length + " values, expected " + d);
+            }
+            System.arraycopy(centroids[i], 0, matrix, i * d, d);
+        }
+        return new CentroidModel(features, mins.clone(), maxs.clone(), segmentIds.clone(), matrix);
+    }
+
+    /**
+     * True when the file starts with this format's magic number; older models
+     * were written with Java serialization.
+     */
+    public static boolean isCentroidModelFile(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (head.hasRemaining() && channel.read(head) >= 0) {
+                // keep reading until 4 bytes or end of file
+            }
+            return !head.hasRemaining() && head.getInt(0) == MAGIC;
+        }
+    }
+
+    public void write(Path path) throws IOException {
+        int d = features.size();
+        int k = segmentIds.length;
+        List<byte[]> names = new ArrayList<>(d);
+        int size = 16;
+        for (String feature : features) {
+            byte[] name = feature.getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += Integer.BYTES + name.length;
+        }
+        size += d * 2 * Double.BYTES + k * Integer.BYTES;
+        int matrixOffset = align8(size);
+        size = matrixOffset + k * d * Double.BYTES;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(d).putInt(k);
+        for (byte[] name : names) {
+            buffer.putInt(name.length).put(name);
+        }
+        for (int j = 0; j < d; j++) {
+            buffer.putDouble(mins[j]).putDouble(maxs[j]);
+        }
+        for (int segmentId : segmentIds) {
+            buffer.putInt(segmentId);
+        }
+        buffer.position(matrixOffset);
+        for (double value : centroids) {
+            buffer.putDouble(value);
+        }
+        buffer.flip();
+
+        // Write to a temp file and move it in place, so a reader never sees a half-written model
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "model", ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public static CentroidModel read(Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.remaining() < 16 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a centroid model file: " + path);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported centroid model version " + version + " in " + path);
+        }
+        buffer.getShort();
+        int d = buffer.getInt();
+        int k = buffer.getInt();
+
+        List<String> features = new ArrayList<>(d);
+        for (int j = 0; j < d; j++) {
+            byte[] name = new byte[buffer.getInt()];
+            buffer.get(name);
+            features.add(new String(name, StandardCharsets.UTF_8));
+        }
+        double[] mins = new double[d];
+        double[] maxs = new double[d];
+        for (int j = 0; j < d; j++) {
+            mins[j] = buffer.getDouble();
+            maxs[j] = buffer.getDouble();
+        }
+        int[] segmentIds = new int[k];
+        for (int i = 0; i < k; i++) {
+            segmentIds[i] = buffer.getInt();
+        }
+
+        int matrixOffset = align8(buffer.position());
+        if (buffer.limit() - matrixOffset != k * d * Double.BYTES) {
+            throw new IOException("Truncated or corrupt centroid model file: " + path);
+        }
+        double[] matrix = new double[k * d];
+        buffer.position(matrixOffset);
+        buffer.asDoubleBuffer().get(matrix);
+        return new CentroidModel(features, mins, maxs, segmentIds, matrix);
+    }
+
+    private static int align8(int offset) {
+        return (offset + 7) & ~7;
+    }
+
+    /**
+     * Min/max scales a raw feature value with this model's normalization params.
+     */
+    public double normalize(int feature, double value) {
+        return FeatureMatrix.scale(value, mins[feature], maxs[feature]);
+    }
+
+    /**
+     * Index of the centroid nearest to {@code point}; the squared distance to every
+     * centroid is written to {@code squaredDistances}, which needs one slot per segment.
+     */
+    public int nearest(double[] point, double[] squaredDistances) {
+        return NearestCentroid.get().nearest(centroids, point, squaredDistances);
+    }
+
+    public List<String> getFeatures() {
+        return features;
+    }
+
+    public int getFeatureCount() {
+        return features.size();
+    }
+
+    public int getSegmentCount() {
+        return segmentIds.length;
+    }
+
+    public int getSegmentId(int index) {
+        return segmentIds[index];
+    }
+}
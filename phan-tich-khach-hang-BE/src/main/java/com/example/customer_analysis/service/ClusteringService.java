@@ -1,239 +1,241 @@
 package com.example.customer_analysis.service;
 
+import com.example.customer_analysis.config.MLConfig;
+import com.example.customer_analysis.dto.request.ClusterRequest;
 import com.example.customer_analysis.dto.response.ClusterResponseDTO;
+import com.example.customer_analysis.dto.response.ConvergenceReportDTO;
+import com.example.customer_analysis.dto.response.KScoreDTO;
 import com.example.customer_analysis.dto.response.SegmentDTO;
 import com.example.customer_analysis.entity.Customer;
 import com.example.customer_analysis.entity.Segment;
-import com.example.customer_analysis.repository.CustomerRepository;
+import com.example.customer_analysis.repository.CustomerBatchRepository;
 import com.example.customer_analysis.repository.SegmentRepository;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.avro.generic.GenericRecord;
-import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.Path;
-import org.apache.parquet.avro.AvroParquetReader;
-import org.apache.parquet.hadoop.ParquetReader;
-import org.apache.parquet.hadoop.util.HadoopInputFile;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import smile.clustering.CentroidClustering;
-import smile.clustering.KMeans;
 
 import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class ClusteringService {
     @Autowired
-    private CustomerRepository customerRepository;
+    private SegmentRepository segmentRepository;
 
     @Autowired
-    private SegmentRepository segmentRepository;
+    private CustomerBatchRepository customerBatchRepository;
 
-    private static final int NUM_CLUSTERS = 4;
-    private static final int MAX_ITERATIONS = 100;
+    @Autowired
+    private MLConfig mlConfig;
 
-    public ClusterResponseDTO performClustering(String parquetPath) throws IOException {
-        long startTime = System.currentTimeMillis();
+    @Autowired
+    private KMeansEngine kMeansEngine;
 
-        // 1. Load data from Parquet
-        List<Customer> customers = loadFromParquet(parquetPath);
+    @Autowired
+    private DashboardService dashboardService;
 
-        // 2. Prepare features for clustering
-        double[][] features = prepareFeatures(customers);
+    private static final List<String> CUSTOMER_COLUMNS = List.of(
+            "Education", "Marital_Status", "Income", "MntWines", "MntFruits", "MntMeatProducts",
+            "MntFishProducts", "MntSweetProducts", "MntGoldProds", "NumWebPurchases", "NumCatalogPurchases",
+            "NumStorePurchases", "AcceptedCmp1", "AcceptedCmp2", "AcceptedCmp3", "AcceptedCmp4", "AcceptedCmp5");
 
-        // 3. Apply KMeans using Smile
-        CentroidClustering<double[], double[]> kmeans = KMeans.fit(features, NUM_CLUSTERS, MAX_ITERATIONS);
+    public ClusterResponseDTO performClustering(ClusterRequest request) throws IOException {
+        long startTime = System.currentTimeMillis();
+        String parquetPath = request.getParquetPath();
+        KMeansEngine.Options options = resolveOptions(request);
+        ClusterRequest.Algorithm algorithm = request.getAlgorithm() != null
+                ? request.getAlgorithm() : ClusterRequest.Algorithm.KMEANS;
+        ClusterResponseDTO.ClusterResponseDTOBuilder response = ClusterResponseDTO.builder();
+
+        boolean autoK = Boolean.TRUE.equals(request.getAutoK());
+        if (autoK && algorithm == ClusterRequest.Algorithm.MINI_BATCH) {
+            throw new IllegalArgumentException("Automatic k selection is only available for KMEANS clustering");
+        }
+
+        SegmentLabeler labeler;
+        long totalCustomers;
+        int numClusters = options.k();
+        if (algorithm == ClusterRequest.Algorithm.MINI_BATCH) {
+            // 1-3. Train mini-batch KMeans by streaming the feature columns
+            int batchSize = request.getBatchSize() != null ? request.getBatchSize() : mlConfig.getMiniBatchSize();
+            int epochs = request.getEpochs() != null ? request.getEpochs() : mlConfig.getMiniBatchEpochs();
+            MiniBatchKMeans model = MiniBatchKMeans.fit(parquetPath, FeatureMatrix.DEFAULT_FEATURES, options,
+                    batchSize, epochs, mlConfig.getMiniBatchShuffleBuffer());
+            totalCustomers = model.getRowCount();
+            response.convergence(toConvergenceReport(model));
+
+            // 4. Labels are assigned while the customers are streamed and saved
+            labeler = (batch, firstRow) -> model.predict(batch);
+        } else {
+            // 1. Load the feature columns from Parquet into the matrix Smile clusters
+            FeatureMatrix matrix = FeatureMatrix.fromParquet(parquetPath, FeatureMatrix.DEFAULT_FEATURES);
+            totalCustomers = matrix.getRowCount();
+
+            // 2. Normalize features for clustering
+            matrix.normalize();
+            double[][] features = matrix.getData();
+
+            // 3. Apply KMeans using Smile, keeping the best of several parallel restarts
+            CentroidClustering<double[], double[]> kmeans;
+            if (autoK) {
+                KMeansEngine.AutoKResult result = kMeansEngine.fitAutoK(features, options,
+                        request.getMinClusters() != null ? request.getMinClusters() : mlConfig.getAutoKMinClusters(),
+                        request.getMaxClusters() != null ? request.getMaxClusters() : mlConfig.getAutoKMaxClusters(),
+                        mlConfig.getSilhouetteSampleSize());
+                kmeans = result.best();
+                numClusters = kmeans.k();
+                response.scoresByK(result.scores().stream()
+                        .map(score -> new KScoreDTO(score.k(), score.inertia(), score.silhouette()))
+                        .toList());
+            } else {
+                kmeans = kMeansEngine.fit(features, options);
+            }
 
-        // 4. Assign cluster labels to customers
-        for (int i = 0; i < customers.size(); i++) {
-            int clusterLabel = kmeans.predict(features[i]); // Use predict() method
-            customers.get(i).setSegment(clusterLabel);
+            // 4. Assign cluster labels
+            int[] labels = new int[features.length];
+            for (int i = 0; i < features.length; i++) {
+                labels[i] = kmeans.predict(features[i]);
+            }
+            labeler = (batch, firstRow) ->
+                    Arrays.copyOfRange(labels, (int) firstRow, (int) firstRow + batch.getRowCount());
         }
 
-        // 5. Save customers with segment info
-        customerRepository.saveAll(customers);
+        // 5. Save customers with segment info, totalling segment statistics on the way
+        SegmentAccumulator statistics = saveCustomers(parquetPath, labeler, numClusters);
 
         // 6. Calculate and save segment statistics
-        List<SegmentDTO> segments = calculateSegmentStatistics(customers);
+        List<SegmentDTO> segments = calculateSegmentStatistics(statistics);
+        // Logs rather than throws: the segments are committed whether or not the dashboard rebuilds
+        dashboardService.refresh();
 
         long processingTime = System.currentTimeMillis() - startTime;
 
-        log.info("Clustering completed in {}ms. {} customers assigned to {} segments",
-                processingTime, customers.size(), NUM_CLUSTERS);
+        log.info("{} clustering completed in {}ms. {} customers assigned to {} segments",
+                algorithm, processingTime, totalCustomers, numClusters);
 
-        return ClusterResponseDTO.builder()
+        return response
                 .message("Clustering completed successfully")
-                .numClusters(NUM_CLUSTERS)
-                .totalCustomers(customers.size())
+                .algorithm(algorithm.name())
+                .numClusters(numClusters)
+                .totalCustomers(Math.toIntExact(totalCustomers))
                 .segments(segments)
                 .processingTimeMs(processingTime)
                 .build();
     }
 
-    private List<Customer> loadFromParquet(String parquetPath) throws IOException {
-        List<Customer> customers = new ArrayList<>();
-        Path path = new Path(parquetPath);
-
-        try (ParquetReader<GenericRecord> reader = AvroParquetReader
-                .<GenericRecord>builder(HadoopInputFile.fromPath(path, new Configuration()))
-                .build()) {
-
-            GenericRecord record;
-            while ((record = reader.read()) != null) {
-                Customer customer = new Customer();
-                customer.setEducation(getFieldAsString(record, "Education"));
-                customer.setMaritalStatus(getFieldAsString(record, "Marital_Status"));
-                customer.setIncome(getFieldAsDouble(record, "Income"));
-                customer.setMntWines(getFieldAsDouble(record, "MntWines"));
-                customer.setMntFruits(getFieldAsDouble(record, "MntFruits"));
-                customer.setMntMeatProducts(getFieldAsDouble(record, "MntMeatProducts"));
-                customer.setMntFishProducts(getFieldAsDouble(record, "MntFishProducts"));
-                customer.setMntSweetProducts(getFieldAsDouble(record, "MntSweetProducts"));
-                customer.setMntGoldProds(getFieldAsDouble(record, "MntGoldProds"));
-                customer.setNumWebPurchases(getFieldAsInt(record, "NumWebPurchases"));
-                customer.setNumCatalogPurchases(getFieldAsInt(record, "NumCatalogPurchases"));
-                customer.setNumStorePurchases(getFieldAsInt(record, "NumStorePurchases"));
-                customer.setAcceptedCmp1(getFieldAsInt(record, "AcceptedCmp1"));
-                customer.setAcceptedCmp2(getFieldAsInt(record, "AcceptedCmp2"));
-                customer.setAcceptedCmp3(getFieldAsInt(record, "AcceptedCmp3"));
-                customer.setAcceptedCmp4(getFieldAsInt(record, "AcceptedCmp4"));
-                customer.setAcceptedCmp5(getFieldAsInt(record, "AcceptedCmp5"));
-                customer.setCreatedAt(LocalDateTime.now());
-
-                customers.add(customer);
-            }
-        }
-
-        return customers;
+    private ConvergenceReportDTO toConvergenceReport(MiniBatchKMeans model) {
+        return ConvergenceReportDTO.builder()
+                .epochs(model.getEpochs())
+                .miniBatches(model.getMiniBatches())
+                .batchSize(model.getBatchSize())
+                .converged(model.isConverged())
+                .finalCenterShift(model.getLastCenterShift())
+                .inertiaHistory(model.getInertiaHistory())
+                .build();
     }
 
-    private double[][] prepareFeatures(List<Customer> customers) {
-        // Select features for clustering (8 features)
-        double[][] features = new double[customers.size()][8];
-
-        // Find min/max for normalization
-        double[] mins = new double[8];
-        double[] maxs = new double[8];
-        Arrays.fill(mins, Double.MAX_VALUE);
-        Arrays.fill(maxs, Double.MIN_VALUE);
-
-        // First pass: find min/max
-        for (Customer c : customers) {
-            double[] values = new double[]{
-                    c.getIncome() != null ? c.getIncome() : 0,
-                    c.getMntWines() != null ? c.getMntWines() : 0,
-                    c.getMntMeatProducts() != null ? c.getMntMeatProducts() : 0,
-                    c.getMntFishProducts() != null ? c.getMntFishProducts() : 0,
-                    c.getNumWebPurchases() != null ? c.getNumWebPurchases() : 0,
-                    c.getNumCatalogPurchases() != null ? c.getNumCatalogPurchases() : 0,
-                    c.getNumStorePurchases() != null ? c.getNumStorePurchases() : 0,
-                    getTotalAcceptedCampaigns(c)
-            };
-
-            for (int j = 0; j < 8; j++) {
-                mins[j] = Math.min(mins[j], values[j]);
-                maxs[j] = Math.max(maxs[j], values[j]);
-            }
-        }
-
-        // Second pass: normalize
-        for (int i = 0; i < customers.size(); i++) {
-            Customer c = customers.get(i);
-            double[] values = new double[]{
-                    c.getIncome() != null ? c.getIncome() : 0,
-                    c.getMntWines() != null ? c.getMntWines() : 0,
-                    c.getMntMeatProducts() != null ? c.getMntMeatProducts() : 0,
-                    c.getMntFishProducts() != null ? c.getMntFishProducts() : 0,
-                    c.getNumWebPurchases() != null ? c.getNumWebPurchases() : 0,
-                    c.getNumCatalogPurchases() != null ? c.getNumCatalogPurchases() : 0,
-                    c.getNumStorePurchases() != null ? c.getNumStorePurchases() : 0,
-                    getTotalAcceptedCampaigns(c)
-            };
-
-            for (int j = 0; j < 8; j++) {
-                features[i][j] = normalize(values[j], mins[j], maxs[j]);
-            }
-        }
-
-        return features;
+    private KMeansEngine.Options resolveOptions(ClusterRequest request) {
+        return new KMeansEngine.Options(
+                request.getNumClusters() != null ? request.getNumClusters() : mlConfig.getDefaultClusters(),
+                request.getMaxIterations() != null ? request.getMaxIterations() : mlConfig.getMaxIterations(),
+                request.getTolerance() != null ? request.getTolerance() : mlConfig.getTolerance(),
+                request.getRestarts() != null ? request.getRestarts() : mlConfig.getRestarts());
     }
 
-    private double normalize(double value, double min, double max) {
-        if (max == min) return 0.5; // Avoid division by zero
-        return (value - min) / (max - min);
+    /**
+     * Streams the full customer rows one row group at a time and inserts them with
+     * their segment in JDBC batches, each chunk committed on its own.
+     */
+    private SegmentAccumulator saveCustomers(String parquetPath, SegmentLabeler labeler, int numClusters)
+            throws IOException {
+        SegmentAccumulator statistics = new SegmentAccumulator(numClusters);
+        int batchSize = Math.max(1, mlConfig.getPersistBatchSize());
+        ParquetColumnReader.forEachRowGroup(parquetPath, CUSTOMER_COLUMNS, (batch, firstRow) -> {
+            int[] labels = labeler.label(batch, firstRow);
+            statistics.add(batch, labels);
+            for (int start = 0; start < batch.getRowCount(); start += batchSize) {
+                int end = Math.min(start + batchSize, batch.getRowCount());
+                List<Customer> customers = new ArrayList<>(end - start);
+                for (int row = start; row < end; row++) {
+                    Customer customer = toCustomer(batch, row);
+                    customer.setSegment(labels[row]);
+                    customers.add(customer);
+                }
+                customerBatchRepository.insertAll(customers);
+            }
+        });
+        return statistics;
     }
 
-    private int getTotalAcceptedCampaigns(Customer c) {
-        return (c.getAcceptedCmp1() != null ? c.getAcceptedCmp1() : 0) +
-                (c.getAcceptedCmp2() != null ? c.getAcceptedCmp2() : 0) +
-                (c.getAcceptedCmp3() != null ? c.getAcceptedCmp3() : 0) +
-                (c.getAcceptedCmp4() != null ? c.getAcceptedCmp4() : 0) +
-                (c.getAcceptedCmp5() != null ? c.getAcceptedCmp5() : 0);
+    private Customer toCustomer(ColumnBatch batch, int row) {
+        Customer customer = new Customer();
+        customer.setEducation(batch.getString("Education", row));
+        customer.setMaritalStatus(batch.getString("Marital_Status", row));
+        customer.setIncome(batch.getDouble("Income", row));
+        customer.setMntWines(batch.getDouble("MntWines", row));
+        customer.setMntFruits(batch.getDouble("MntFruits", row));
+        customer.setMntMeatProducts(batch.getDouble("MntMeatProducts", row));
+        customer.setMntFishProducts(batch.getDouble("MntFishProducts", row));
+        customer.setMntSweetProducts(batch.getDouble("MntSweetProducts", row));
+        customer.setMntGoldProds(batch.getDouble("MntGoldProds", row));
+        customer.setNumWebPurchases(batch.getInteger("NumWebPurchases", row));
+        customer.setNumCatalogPurchases(batch.getInteger("NumCatalogPurchases", row));
+        customer.setNumStorePurchases(batch.getInteger("NumStorePurchases", row));
+        customer.setAcceptedCmp1(batch.getInteger("AcceptedCmp1", row));
+        customer.setAcceptedCmp2(batch.getInteger("AcceptedCmp2", row));
+        customer.setAcceptedCmp3(batch.getInteger("AcceptedCmp3", row));
+        customer.setAcceptedCmp4(batch.getInteger("AcceptedCmp4", row));
+        customer.setAcceptedCmp5(batch.getInteger("AcceptedCmp5", row));
+        customer.setCreatedAt(LocalDateTime.now());
+        return customer;
     }
 
-    private List<SegmentDTO> calculateSegmentStatistics(List<Customer> customers) {
-        Map<Integer, List<Customer>> segmentMap = customers.stream()
-                .collect(Collectors.groupingBy(Customer::getSegment));
-
-        List<SegmentDTO> segments = new ArrayList<>();
+    private List<SegmentDTO> calculateSegmentStatistics(SegmentAccumulator statistics) {
+        List<Segment> segments = new ArrayList<>();
 
-        for (Map.Entry<Integer, List<Customer>> entry : segmentMap.entrySet()) {
-            Integer segmentId = entry.getKey();
-            List<Customer> segmentCustomers = entry.getValue();
+        for (int segmentId = 0; segmentId < statistics.getSegmentCount(); segmentId++) {
+            long count = statistics.count(segmentId);
+            if (count == 0) {
+                continue;
+            }
 
             Segment segment = new Segment();
             segment.setSegmentId(segmentId);
             segment.setSegmentName("Segment " + segmentId);
-            segment.setCustomerCount((long) segmentCustomers.size());
-
-            // Calculate averages
-            segment.setAvgIncome(segmentCustomers.stream()
-                    .mapToDouble(c -> c.getIncome() != null ? c.getIncome() : 0)
-                    .average().orElse(0));
-
-            segment.setAvgMntWines(segmentCustomers.stream()
-                    .mapToDouble(c -> c.getMntWines() != null ? c.getMntWines() : 0)
-                    .average().orElse(0));
-
-            segment.setAvgNumWebPurchases((int) segmentCustomers.stream()
-                    .mapToInt(c -> c.getNumWebPurchases() != null ? c.getNumWebPurchases() : 0)
-                    .average().orElse(0));
-
-            // Calculate total spending
-            double avgSpending = segmentCustomers.stream()
-                    .mapToDouble(c ->
-                            (c.getMntWines() != null ? c.getMntWines() : 0) +
-                                    (c.getMntFruits() != null ? c.getMntFruits() : 0) +
-                                    (c.getMntMeatProducts() != null ? c.getMntMeatProducts() : 0) +
-                                    (c.getMntFishProducts() != null ? c.getMntFishProducts() : 0) +
-                                    (c.getMntSweetProducts() != null ? c.getMntSweetProducts() : 0) +
-                                    (c.getMntGoldProds() != null ? c.getMntGoldProds() : 0)
-                    ).average().orElse(0);
-            segment.setAvgSpending(avgSpending);
-
-            // Calculate response rate
-            long totalResponses = segmentCustomers.stream()
-                    .mapToLong(this::getTotalAcceptedCampaigns)
-                    .sum();
-            double responseRate = (double) totalResponses / (segmentCustomers.size() * 5) * 100;
-            segment.setResponseRate(responseRate);
+            segment.setCustomerCount(count);
+
+            // Averages come straight from the accumulated means
+            segment.setAvgIncome(statistics.mean("Income", segmentId));
+            segment.setAvgMntWines(statistics.mean("MntWines", segmentId));
+            segment.setAvgNumWebPurchases((int) statistics.mean("NumWebPurchases", segmentId));
+            segment.setAvgSpending(statistics.mean("TotalSpending", segmentId));
+
+            // Response rate: accepted campaigns out of the 5 offered
+            segment.setResponseRate(statistics.mean("TotalCampaigns", segmentId) / 5 * 100);
 
             // Generate description
             segment.setDescription(generateSegmentDescription(segment));
             segment.setUpdatedAt(LocalDateTime.now());
 
-            segmentRepository.save(segment);
-
-            segments.add(convertToSegmentDTO(segment));
+            segments.add(segment);
         }
 
-        return segments;
+        segmentRepository.replaceAll(segments);
+
+        return segments.stream()
+                .map(segment -> {
+                    SegmentDTO dto = convertToSegmentDTO(segment);
+                    dto.setCharacteristics(statistics.characteristics(segment.getSegmentId()));
+                    return dto;
+                })
+                .toList();
     }
 
     private String generateSegmentDescription(Segment segment) {
@@ -278,32 +280,92 @@ public class ClusteringService {
                 .build();
     }
 
-    private String getFieldAsString(GenericRecord record, String field) {
-        Object value = record.get(field);
-        return value != null ? value.toString() : null;
+    /**
+     * Segment of every row in a row group of the uploaded file.
+     */
+    @FunctionalInterface
+    private interface SegmentLabeler {
+        int[] label(ColumnBatch batch, long firstRow);
     }
 
-    private Double getFieldAsDouble(GenericRecord record, String field) {
-        Object value = record.get(field);
-        if (value == null) return null;
-        if (value instanceof Number) return ((Number) value).doubleValue();
-        try {
-            return Double.parseDouble(value.toString());
-        } catch (NumberFormatException e) {
-            log.warn("Failed to parse double from field {}: {}", field, value);
-            return null;
+    /**
+     * Per-segment count, mean, variance, min and max of every metric, updated in one
+     * pass over the labelled row groups with Welford's algorithm.
+     */
+    static class SegmentAccumulator {
+        private static final List<String> METRICS = List.of(
+                "Income", "TotalSpending", "MntWines", "MntMeatProducts", "MntFishProducts",
+                "NumWebPurchases", "NumCatalogPurchases", "NumStorePurchases", "TotalCampaigns");
+
+        private final long[][] counts;   // [metric][segment]
+        private final double[][] means;
+        private final double[][] m2;     // Sum of squared deviations from the mean
+        private final double[][] mins;
+        private final double[][] maxs;
+        private double[] values = new double[0];
+
+        SegmentAccumulator(int segmentCount) {
+            counts = new long[METRICS.size()][segmentCount];
+            means = new double[METRICS.size()][segmentCount];
+            m2 = new double[METRICS.size()][segmentCount];
+            mins = new double[METRICS.size()][segmentCount];
+            maxs = new double[METRICS.size()][segmentCount];
+            for (int m = 0; m < METRICS.size(); m++) {
+                Arrays.fill(mins[m], Double.POSITIVE_INFINITY);
+                Arrays.fill(maxs[m], Double.NEGATIVE_INFINITY);
+            }
         }
-    }
 
-    private Integer getFieldAsInt(GenericRecord record, String field) {
-        Object value = record.get(field);
-        if (value == null) return null;
-        if (value instanceof Number) return ((Number) value).intValue();
-        try {
-            return Integer.parseInt(value.toString());
-        } catch (NumberFormatException e) {
-            log.warn("Failed to parse integer from field {}: {}", field, value);
-            return null;
+        void add(ColumnBatch batch, int[] labels) {
+            int rows = batch.getRowCount();
+            if (values.length < rows) {
+                values = new double[rows];
+            }
+            for (int m = 0; m < METRICS.size(); m++) {
+                FeatureMatrix.featureValues(batch, METRICS.get(m), values);
+                long[] count = counts[m];
+                double[] mean = means[m];
+                double[] squares = m2[m];
+                double[] min = mins[m];
+                double[] max = maxs[m];
+                for (int row = 0; row < rows; row++) {
+                    int s = labels[row];
+                    double x = values[row];
+                    double delta = x - mean[s];
+                    mean[s] += delta / ++count[s];
+                    squares[s] += delta * (x - mean[s]);
+                    if (x < min[s]) min[s] = x;
+                    if (x > max[s]) max[s] = x;
+                }
+            }
+        }
+
+        int getSegmentCount() {
+            return counts[0].length;
+        }
+
+        long count(int segment) {
+            return counts[0][segment];
+        }
+
+        double mean(String metric, int segment) {
+            return means[METRICS.indexOf(metric)][segment];
+        }
+
+        Map<String, Object> characteristics(int segment) {
+            Map<String, Object> characteristics = new LinkedHashMap<>();
+            for (int m = 0; m < METRICS.size(); m++) {
+                long n = counts[m][segment];
+                double variance = n > 0 ? m2[m][segment] / n : 0;
+                Map<String, Object> stats = new LinkedHashMap<>();
+                stats.put("mean", means[m][segment]);
+                stats.put("variance", variance);
+                stats.put("stdDev", Math.sqrt(variance));
+                stats.put("min", mins[m][segment]);
+                stats.put("max", maxs[m][segment]);
+                characteristics.put(METRICS.get(m), stats);
+            }
+            return characteristics;
         }
     }
 }
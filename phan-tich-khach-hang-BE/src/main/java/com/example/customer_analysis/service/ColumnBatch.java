@@ -0,0 +1,75 @@
+package com.example.customer_analysis.service;
+
+import java.util.List;
+
+/**
+ * Rows of a Parquet file decoded column by column into primitive arrays.
+ * Numeric values are stored as doubles; a missing value reads as 0, matching
+ * how the clustering code treats null fields, and {@link #isNull} tells them apart.
+ */
+public class ColumnBatch {
+    private final List<String> columns;
+    private final int rowCount;
+    private final double[][] numbers;
+    private final String[][] strings;
+    private final boolean[][] present;
+
+    ColumnBatch(List<String> columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+        this.numbers = new double[columns.size()][];
+        this.strings = new String[columns.size()][];
+        this.present = new boolean[columns.size()][rowCount];
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int indexOf(String column) {
+        int index = columns.indexOf(column);
+        if (index < 0) {
+            throw new IllegalArgumentException("Column not loaded: " + column);
+        }
+        return index;
+    }
+
+    /**
+     * Values of a numeric column; missing values are 0.
+     */
+    public double[] numbers(String column) {
+        int index = indexOf(column);
+        if (numbers[index] == null) {
+            numbers[index] = new double[rowCount];
+        }
+        return numbers[index];
+    }
+
+    public String[] strings(String column) {
+        int index = indexOf(column);
+        if (strings[index] == null) {
+            strings[index] = new String[rowCount];
+        }
+        return strings[index];
+    }
+
+    public boolean isNull(String column, int row) {
+        return !present[indexOf(column)][row];
+    }
+
+    public Double getDouble(String column, int row) {
+        return isNull(column, row) ? null : numbers(column)[row];
+    }
+
+    public Integer getInteger(String column, int row) {
+        return isNull(column, row) ? null : (int) numbers(column)[row];
+    }
+
+    public String getString(String column, int row) {
+        return isNull(column, row) ? null : strings(column)[row];
+    }
+
+    boolean[] presence(int columnIndex) {
+        return present[columnIndex];
+    }
+}
@@ -3,6 +3,7 @@ package com.example.customer_analysis.service;
 import com.example.customer_analysis.config.ColumnMappingConfig;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.parquet.schema.MessageType;
 import org.springframework.stereotype.Service;
 import lombok.Builder;
 import java.util.*;
@@ -11,22 +12,30 @@ import java.util.*;
 @Slf4j
 public class ColumnMapperService {
 
+    // Alias (lower case) -> standard column, built once instead of per uploaded header
+    private static final Map<String, String> ALIAS_INDEX = buildAliasIndex();
+
+    private static Map<String, String> buildAliasIndex() {
+        Map<String, String> index = new HashMap<>();
+        for (var entry : ColumnMappingConfig.COLUMN_MAPPINGS.entrySet()) {
+            String standard = entry.getKey();
+            index.putIfAbsent(standard.toLowerCase(), standard); // bao gồm cả chính tên chuẩn
+            for (String alias : entry.getValue()) {
+                index.putIfAbsent(alias, standard);
+            }
+        }
+        return index;
+    }
+
     public Map<String, String> mapColumns(Set<String> uploadedColumns) {
         Map<String, String> mapping = new HashMap<>();
 
         for (String uploaded : uploadedColumns) {
-            String normalized = uploaded.toLowerCase().trim();
-
-            for (var entry : ColumnMappingConfig.COLUMN_MAPPINGS.entrySet()) {
-                String standard = entry.getKey();
-                List<String> aliases = new ArrayList<>(entry.getValue());
-                aliases.add(standard.toLowerCase()); // bao gồm cả chính tên chuẩn
+            String standard = ALIAS_INDEX.get(uploaded.toLowerCase().trim());
 
-                if (aliases.contains(normalized)) {
-                    mapping.put(uploaded, standard);
-                    log.info("Mapped column '{}' to '{}'", uploaded, standard);
-                    break;
-                }
+            if (standard != null) {
+                mapping.put(uploaded, standard);
+                log.info("Mapped column '{}' to '{}'", uploaded, standard);
             }
         }
 
@@ -68,29 +77,13 @@ public class ColumnMapperService {
                 .build();
     }
 
-    public Map<String, Object> normalizeRow(Map<String, Object> originalRow, Map<String, String> columnMapping) {
-        Map<String, Object> normalizedRow = new HashMap<>();
-
-        // Map uploaded columns to standard names
-        for (Map.Entry<String, Object> entry : originalRow.entrySet()) {
-            String uploadedColumn = entry.getKey();
-            String standardColumn = columnMapping.get(uploadedColumn);
-
-            if (standardColumn != null) {
-                normalizedRow.put(standardColumn, entry.getValue());
-            }
-        }
-
-        // Fill in missing columns with default values
-        for (Map.Entry<String, Object> defaultEntry : ColumnMappingConfig.DEFAULT_VALUES.entrySet()) {
-            String column = defaultEntry.getKey();
-            if (!normalizedRow.containsKey(column)) {
-                normalizedRow.put(column, defaultEntry.getValue());
-                log.debug("Using default value for missing column: {}", column);
-            }
-        }
-
-        return normalizedRow;
+    /**
+     * Compiles the column mapping and default values into a plan that converts
+     * rows of {@code uploadedColumns} (in this order) into {@code schema} fields.
+     */
+    public IngestPlan compilePlan(List<String> uploadedColumns, Map<String, String> columnMapping,
+                                  MessageType schema) {
+        return new IngestPlan(schema, uploadedColumns, columnMapping, ColumnMappingConfig.DEFAULT_VALUES);
     }
 
     @Data
@@ -0,0 +1,224 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.FileConfig;
+import com.example.customer_analysis.dto.request.CustomerFilterRequest;
+import com.example.customer_analysis.dto.response.CustomerDTO;
+import com.example.customer_analysis.repository.CustomerQueryRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams filtered customers straight from a forward-only JDBC cursor to an
+ * output stream as NDJSON, CSV or Parquet. Only one row (one row group for
+ * Parquet) is held at a time, and the first bytes go out as soon as the first
+ * rows are read, however many customers match.
+ */
+@Service
+@Slf4j
+public class CustomerExportService {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv"),
+        PARQUET("application/vnd.apache.parquet", "parquet");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static Format parse(String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException | NullPointerException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + value);
+            }
+        }
+    }
+
+    // Push what has been written to the client every this many rows
+    private static final int FLUSH_EVERY_ROWS = 1000;
+
+    private static final String CSV_HEADER = "ID,Education,Marital_Status,Income,MntWines,MntFruits,"
+            + "MntMeatProducts,MntFishProducts,MntSweetProducts,MntGoldProds,NumWebPurchases,"
+            + "NumCatalogPurchases,NumStorePurchases,AcceptedCmp1,AcceptedCmp2,AcceptedCmp3,"
+            + "AcceptedCmp4,AcceptedCmp5,Segment";
+
+    private final CustomerQueryRepository customerQueryRepository;
+    private final FileConfig fileConfig;
+    private final ObjectMapper objectMapper;
+    // Flushing is paced by FLUSH_EVERY_ROWS instead of after every row
+    private final ObjectWriter rowWriter;
+
+    public CustomerExportService(CustomerQueryRepository customerQueryRepository, FileConfig fileConfig,
+                                 ObjectMapper objectMapper) {
+        this.customerQueryRepository = customerQueryRepository;
+        this.fileConfig = fileConfig;
+        this.objectMapper = objectMapper;
+        this.rowWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Writes every customer matching {@code filter}, in id order. Does not close {@code out}.
+     *
+     * @param gzip compress the output; flushes are sync flushes, so rows still reach the client early
+     * @return number of customers written
+     */
+    public long export(CustomerFilterRequest filter, Format format, boolean gzip, OutputStream out) throws IOException {
+        long start = System.currentTimeMillis();
+        OutputStream target = new NonClosingOutputStream(out);
+        if (gzip) {
+            target = new GZIPOutputStream(target, 64 * 1024, true);
+        }
+
+        long rows;
+        try (OutputStream stream = target) {
+            rows = switch (format) {
+                case NDJSON -> writeNdjson(filter, stream);
+                case CSV -> writeCsv(filter, stream);
+                case PARQUET -> writeParquet(filter, stream);
+            };
+        } catch (UncheckedIOException e) {
+            // Usually the client went away mid-download
+            throw e.getCause();
+        }
+        log.info("Exported {} customers as {}{} in {}ms", rows, format, gzip ? " (gzip)" : "",
+                System.currentTimeMillis() - start);
+        return rows;
+    }
+
+    private long writeNdjson(CustomerFilterRequest filter, OutputStream out) throws IOException {
+        long[] rows = new long[1];
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            customerQueryRepository.forEach(filter, fileConfig.getExportFetchSize(), customer -> {
+                try {
+                    rowWriter.writeValue(generator, customer);
+                    generator.writeRaw('\n');
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 1) {
+                        generator.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    private long writeCsv(CustomerFilterRequest filter, OutputStream out) throws IOException {
+        long[] rows = new long[1];
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+            writer.flush();
+            customerQueryRepository.forEach(filter, fileConfig.getExportFetchSize(), customer -> {
+                try {
+                    writeCsvRow(writer, customer);
+                    if (++rows[0] % FLUSH_EVERY_ROWS == 1) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    private static void writeCsvRow(Writer writer, CustomerDTO c) throws IOException {
+        Object[] values = {c.getId(), c.getEducation(), c.getMaritalStatus(), c.getIncome(),
+                c.getMntWines(), c.getMntFruits(), c.getMntMeatProducts(), c.getMntFishProducts(),
+                c.getMntSweetProducts(), c.getMntGoldProds(), c.getNumWebPurchases(),
+                c.getNumCatalogPurchases(), c.getNumStorePurchases(), c.getAcceptedCmp1(),
+                c.getAcceptedCmp2(), c.getAcceptedCmp3(), c.getAcceptedCmp4(), c.getAcceptedCmp5(),
+                c.getSegment()};
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            // NULL is an empty field
+            if (values[i] != null) {
+                writer.write(csvField(values[i].toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private long writeParquet(CustomerFilterRequest filter, OutputStream out) throws IOException {
+        long[] rows = new long[1];
+        FileConfig.ParquetWriterSettings settings = fileConfig.getParquetWriter();
+        try (ParquetWriter<CustomerDTO> writer = CustomerParquetWriter.builder(out)
+                .withCompressionCodec(settings.getCompression())
+                .withRowGroupSize(fileConfig.getExportRowGroupSize())
+                .withPageSize(settings.getPageSize())
+                .withDictionaryPageSize(settings.getDictionaryPageSize())
+                .withDictionaryEncoding(settings.isDictionaryEncoding())
+                .build()) {
+            customerQueryRepository.forEach(filter, fileConfig.getExportFetchSize(), customer -> {
+                try {
+                    writer.write(customer);
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    /**
+     * Closing the writers finishes the format (gzip trailer, Parquet footer) but
+     * leaves the response stream to the container.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
+}
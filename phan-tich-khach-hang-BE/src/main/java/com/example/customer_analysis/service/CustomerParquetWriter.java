@@ -0,0 +1,198 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.dto.response.CustomerDTO;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName.*;
+import static org.apache.parquet.schema.Type.Repetition.OPTIONAL;
+import static org.apache.parquet.schema.Type.Repetition.REQUIRED;
+
+/**
+ * Parquet writer for exported {@link CustomerDTO}s, using the same column names
+ * as uploaded customer files plus Segment, so an export can be clustered again.
+ * Writes to any {@link OutputStream}, e.g. an HTTP response.
+ */
+public final class CustomerParquetWriter {
+
+    static final MessageType SCHEMA = new MessageType("Customer",
+            new PrimitiveType(REQUIRED, INT32, "ID"),
+            new PrimitiveType(OPTIONAL, BINARY, "Education"),
+            new PrimitiveType(OPTIONAL, BINARY, "Marital_Status"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "Income"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntWines"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntFruits"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntMeatProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntFishProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntSweetProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntGoldProds"),
+            new PrimitiveType(OPTIONAL, INT32, "NumWebPurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "NumCatalogPurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "NumStorePurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp1"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp2"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp3"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp4"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp5"),
+            new PrimitiveType(OPTIONAL, INT32, "Segment")
+    );
+
+    private CustomerParquetWriter() {
+    }
+
+    public static Builder builder(OutputStream out) {
+        return new Builder(new StreamOutputFile(out));
+    }
+
+    public static class Builder extends ParquetWriter.Builder<CustomerDTO, Builder> {
+
+        private Builder(OutputFile file) {
+            super(file);
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<CustomerDTO> getWriteSupport(Configuration conf) {
+            return new CustomerWriteSupport();
+        }
+    }
+
+    private static class CustomerWriteSupport extends WriteSupport<CustomerDTO> {
+        private RecordConsumer recordConsumer;
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(SCHEMA, Collections.emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.recordConsumer = recordConsumer;
+        }
+
+        @Override
+        public void write(CustomerDTO c) {
+            recordConsumer.startMessage();
+            writeInt(0, c.getId());
+            writeString(1, c.getEducation());
+            writeString(2, c.getMaritalStatus());
+            writeDouble(3, c.getIncome());
+            writeDouble(4, c.getMntWines());
+            writeDouble(5, c.getMntFruits());
+            writeDouble(6, c.getMntMeatProducts());
+            writeDouble(7, c.getMntFishProducts());
+            writeDouble(8, c.getMntSweetProducts());
+            writeDouble(9, c.getMntGoldProds());
+            writeInt(10, c.getNumWebPurchases());
+            writeInt(11, c.getNumCatalogPurchases());
+            writeInt(12, c.getNumStorePurchases());
+            writeInt(13, c.getAcceptedCmp1());
+            writeInt(14, c.getAcceptedCmp2());
+            writeInt(15, c.getAcceptedCmp3());
+            writeInt(16, c.getAcceptedCmp4());
+            writeInt(17, c.getAcceptedCmp5());
+            writeInt(18, c.getSegment());
+            recordConsumer.endMessage();
+        }
+
+        // OPTIONAL fields with a null value are simply left out
+        private void writeInt(int field, Integer value) {
+            if (value != null) {
+                recordConsumer.startField(SCHEMA.getFieldName(field), field);
+                recordConsumer.addInteger(value);
+                recordConsumer.endField(SCHEMA.getFieldName(field), field);
+            }
+        }
+
+        private void writeDouble(int field, Double value) {
+            if (value != null) {
+                recordConsumer.startField(SCHEMA.getFieldName(field), field);
+                recordConsumer.addDouble(value);
+                recordConsumer.endField(SCHEMA.getFieldName(field), field);
+            }
+        }
+
+        private void writeString(int field, String value) {
+            if (value != null) {
+                recordConsumer.startField(SCHEMA.getFieldName(field), field);
+                recordConsumer.addBinary(Binary.fromString(value));
+                recordConsumer.endField(SCHEMA.getFieldName(field), field);
+            }
+        }
+    }
+
+    /**
+     * Parquet only needs to append and know its position, so any stream will do.
+     */
+    private static class StreamOutputFile implements OutputFile {
+        private final OutputStream out;
+
+        StreamOutputFile(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.dto.response.DashboardDTO;
+import com.example.customer_analysis.dto.response.SegmentDTO;
+import com.example.customer_analysis.entity.DataVersion;
+import com.example.customer_analysis.entity.Segment;
+import com.example.customer_analysis.repository.CustomerAggregateRepository;
+import com.example.customer_analysis.repository.DataVersionRepository;
+import com.example.customer_analysis.repository.SegmentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a precomputed dashboard in memory, so serving it rarely touches the
+ * database. Clustering and re-segmentation bump a version stamp persisted in
+ * DataVersions after committing new segments; every node compares its snapshot
+ * against that stamp at most once per app.dashboardVersionCheckIntervalMs and
+ * rebuilds when it changed. The stamp is also the ETag, so it is the same on
+ * every node.
+ */
+@Service
+@Slf4j
+public class DashboardService {
+
+    public record DashboardSnapshot(DashboardDTO dashboard, long version, String etag) {
+    }
+
+    private static final String VERSION_NAME = "dashboard";
+
+    @Autowired
+    private CustomerAggregateRepository customerAggregateRepository;
+
+    @Autowired
+    private SegmentRepository segmentRepository;
+
+    @Autowired
+    private DataVersionRepository dataVersionRepository;
+
+    @Value("${app.dashboardVersionCheckIntervalMs:5000}")
+    private long versionCheckIntervalMs;
+
+    private final AtomicReference<DashboardSnapshot> snapshot = new AtomicReference<>();
+    private final ReentrantLock buildLock = new ReentrantLock();
+    private volatile long lastVersionCheck;
+
+    /**
+     * Returns the current snapshot, rebuilding it first when the persisted version
+     * moved on. While one thread re-checks or rebuilds, others keep serving the
+     * current snapshot.
+     */
+    public DashboardSnapshot getSnapshot() {
+        DashboardSnapshot current = snapshot.get();
+        if (current != null && System.currentTimeMillis() - lastVersionCheck < versionCheckIntervalMs) {
+            return current;
+        }
+
+        if (current != null) {
+            if (!buildLock.tryLock()) {
+                return current;
+            }
+        } else {
+            buildLock.lock();
+        }
+
+        try {
+            current = snapshot.get();
+            if (current != null && System.currentTimeMillis() - lastVersionCheck < versionCheckIntervalMs) {
+                return current;
+            }
+            try {
+                long version = persistedVersion();
+                if (current == null || current.version() != version) {
+                    current = build(version);
+                }
+                lastVersionCheck = System.currentTimeMillis();
+            } catch (RuntimeException e) {
+                if (current == null) {
+                    throw e;
+                }
+                log.error("Failed to refresh dashboard snapshot, serving v{}", current.version(), e);
+            }
+            return current;
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    /**
+     * Records that customer segments or segment statistics were committed: bumps the
+     * persisted version, so every node rebuilds, and rebuilds this node's snapshot.
+     * Never throws; the dashboard is derived data and must not fail the caller's
+     * already committed work. A failed rebuild is retried by the next version check.
+     */
+    public void refresh() {
+        long version;
+        try {
+            version = bumpVersion();
+        } catch (RuntimeException e) {
+            log.error("Failed to bump the dashboard version; other nodes keep their snapshot until it changes", e);
+            return;
+        }
+
+        buildLock.lock();
+        try {
+            build(version);
+            lastVersionCheck = System.currentTimeMillis();
+        } catch (RuntimeException e) {
+            log.error("Failed to rebuild dashboard snapshot v{}", version, e);
+        } finally {
+            buildLock.unlock();
+        }
+    }
+
+    private long persistedVersion() {
+        return dataVersionRepository.findById(VERSION_NAME).map(DataVersion::getVersion).orElse(0L);
+    }
+
+    private long bumpVersion() {
+        if (dataVersionRepository.increment(VERSION_NAME) == 0) {
+            DataVersion first = new DataVersion();
+            first.setName(VERSION_NAME);
+            first.setVersion(1L);
+            first.setUpdatedAt(LocalDateTime.now());
+            try {
+                dataVersionRepository.save(first);
+            } catch (DataIntegrityViolationException e) {
+                // Another node inserted the row first
+                dataVersionRepository.increment(VERSION_NAME);
+            }
+        }
+        return persistedVersion();
+    }
+
+    /**
+     * Builds from the data as of at least {@code version}; called with buildLock held.
+     */
+    private DashboardSnapshot build(long version) {
+        long startTime = System.currentTimeMillis();
+        DashboardSnapshot built = new DashboardSnapshot(buildDashboard(), version, "\"dashboard-" + version + "\"");
+        snapshot.set(built);
+        log.info("Dashboard snapshot v{} built in {}ms", version, System.currentTimeMillis() - startTime);
+        return built;
+    }
+
+    private DashboardDTO buildDashboard() {
+        DashboardDTO dashboard = new DashboardDTO();
+
+        // Counts, averages and every distribution come from one scan of the customers table
+        CustomerAggregateRepository.DashboardAggregates aggregates = customerAggregateRepository.aggregate();
+
+        // Tổng số khách hàng
+        dashboard.setTotalCustomers(aggregates.totalCustomers());
+
+        //  Trung bình chi tiêu (avgSpending)
+        dashboard.setAvgSpending(aggregates.avgSpending() != null ? aggregates.avgSpending() : 0.0);
+
+        // Tỷ lệ phản hồi chiến dịch marketing (response rate)
+        dashboard.setMarketingResponseRate(aggregates.avgResponseRate() != null ? aggregates.avgResponseRate() : 0.0);
+
+        // Phân bố khách hàng theo segment
+        dashboard.setSegmentDistribution(aggregates.segmentDistribution());
+
+        // Phân bố Income, Education và Marital Status theo Segment
+        dashboard.setIncomeBySegment(aggregates.breakdowns().get("income"));
+        dashboard.setEducationBySegment(aggregates.breakdowns().get("education"));
+        dashboard.setMaritalStatusBySegment(aggregates.breakdowns().get("maritalStatus"));
+
+        //Top segments theo doanh thu trung bình hoặc số lượng khách
+        List<Segment> topSegments = segmentRepository.findTop3ByOrderByAvgSpendingDesc();
+        List<SegmentDTO> topSegmentDTOs = topSegments.stream()
+                .map(segment -> SegmentDTO.builder()
+                        .segmentId(segment.getSegmentId())
+                        .segmentName(segment.getSegmentName())
+                        .avgIncome(segment.getAvgIncome())
+                        .avgSpending(segment.getAvgSpending())
+                        .customerCount(segment.getCustomerCount())
+                        .description(segment.getDescription())
+                        .build())
+                .collect(Collectors.toList());
+        dashboard.setTopSegments(topSegmentDTOs);
+
+        return dashboard;
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.customer_analysis.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Row-major customer feature matrix in the {@code double[][]} layout Smile
+ * takes, filled straight from Parquet so clustering holds exactly one copy of
+ * the features. Min/max of every feature are tracked while the matrix is
+ * filled, so normalization needs a single pass over the data. Also the home of
+ * the feature definitions shared by clustering, training and scoring.
+ */
+public class FeatureMatrix {
+
+    public static final List<String> DEFAULT_FEATURES = List.of(
+            "Income",
+            "MntWines",
+            "MntMeatProducts",
+            "MntFishProducts",
+            "NumWebPurchases",
+            "NumCatalogPurchases",
+            "NumStorePurchases",
+            "TotalCampaigns"
+    );
+
+    // Every feature is the sum of one or more customer columns, keyed by lower-case feature name
+    private static final Map<String, List<String>> FEATURE_COLUMNS = Map.ofEntries(
+            Map.entry("income", List.of("Income")),
+            Map.entry("mntwines", List.of("MntWines")),
+            Map.entry("mntfruits", List.of("MntFruits")),
+            Map.entry("mntmeatproducts", List.of("MntMeatProducts")),
+            Map.entry("mntfishproducts", List.of("MntFishProducts")),
+            Map.entry("mntsweetproducts", List.of("MntSweetProducts")),
+            Map.entry("mntgoldprods", List.of("MntGoldProds")),
+            Map.entry("numwebpurchases", List.of("NumWebPurchases")),
+            Map.entry("numcatalogpurchases", List.of("NumCatalogPurchases")),
+            Map.entry("numstorepurchases", List.of("NumStorePurchases")),
+            Map.entry("totalcampaigns", List.of(
+                    "AcceptedCmp1", "AcceptedCmp2", "AcceptedCmp3", "AcceptedCmp4", "AcceptedCmp5")),
+            Map.entry("totalspending", List.of(
+                    "MntWines", "MntFruits", "MntMeatProducts", "MntFishProducts", "MntSweetProducts", "MntGoldProds"))
+    );
+
+    private final List<String> features;
+    private final double[][] data;
+    private final double[] mins;
+    private final double[] maxs;
+    private boolean normalized;
+
+    public FeatureMatrix(List<String> features, int rows) {
+        this.features = List.copyOf(features);
+        this.data = new double[rows][features.size()];
+        this.mins = new double[features.size()];
+        this.maxs = new double[features.size()];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Builds the matrix straight from a Parquet file, reading only the columns
+     * the features are computed from, one row group at a time.
+     */
+    public static FeatureMatrix fromParquet(String parquetPath, List<String> features) throws IOException {
+        FeatureMatrix matrix = new FeatureMatrix(features, Math.toIntExact(countRows(parquetPath)));
+        ParquetColumnReader.forEachRowGroup(parquetPath, sourceColumns(features),
+                (batch, firstRow) -> matrix.fill(batch, (int) firstRow));
+        return matrix;
+    }
+
+    /**
+     * Customer columns needed to compute the given features.
+     */
+    public static List<String> sourceColumns(List<String> features) {
+        Set<String> columns = new LinkedHashSet<>();
+        for (String feature : features) {
+            columns.addAll(columnsOf(feature));
+        }
+        return new ArrayList<>(columns);
+    }
+
+    /**
+     * Every customer column that some feature is computed from.
+     */
+    public static Set<String> customerColumns() {
+        Set<String> columns = new TreeSet<>();
+        FEATURE_COLUMNS.values().forEach(columns::addAll);
+        return columns;
+    }
+
+    /**
+     * Columns summed into a feature; unknown features have none and are always 0.
+     */
+    public static List<String> columnsOf(String feature) {
+        return FEATURE_COLUMNS.getOrDefault(feature.toLowerCase(), List.of());
+    }
+
+    /**
+     * For every feature, the positions in {@code sourceColumns(features)} of the
+     * columns summed into it.
+     */
+    public static int[][] columnIndexes(List<String> features) {
+        List<String> sourceColumns = sourceColumns(features);
+        int[][] indexes = new int[features.size()][];
+        for (int j = 0; j < indexes.length; j++) {
+            indexes[j] = columnsOf(features.get(j)).stream().mapToInt(sourceColumns::indexOf).toArray();
+        }
+        return indexes;
+    }
+
+    private static long countRows(String parquetPath) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new Path(parquetPath), new Configuration()))) {
+            return reader.getFooter().getBlocks().stream().mapToLong(BlockMetaData::getRowCount).sum();
+        }
+    }
+
+    /**
+     * Computes every feature for the rows of {@code batch} and stores them from {@code firstRow} on.
+     */
+    public void fill(ColumnBatch batch, int firstRow) {
+        if (normalized) {
+            throw new IllegalStateException("Feature matrix is already normalized");
+        }
+        int count = batch.getRowCount();
+        double[] values = new double[count];
+        for (int j = 0; j < features.size(); j++) {
+            featureValues(batch, features.get(j), values);
+            double min = mins[j];
+            double max = maxs[j];
+            for (int i = 0; i < count; i++) {
+                double value = values[i];
+                data[firstRow + i][j] = value;
+                if (value < min) min = value;
+                if (value > max) max = value;
+            }
+            mins[j] = min;
+            maxs[j] = max;
+        }
+    }
+
+    /**
+     * Writes the raw values of one feature for every row of {@code batch} into {@code out}.
+     */
+    public static void featureValues(ColumnBatch batch, String feature, double[] out) {
+        int count = batch.getRowCount();
+        Arrays.fill(out, 0, count, 0);
+        for (String column : columnsOf(feature)) {
+            double[] source = batch.numbers(column);
+            for (int i = 0; i < count; i++) {
+                out[i] += source[i];
+            }
+        }
+    }
+
+    /**
+     * Min/max scaling used everywhere features are normalized; a constant feature maps to 0.5.
+     */
+    public static double scale(double value, double min, double max) {
+        double range = max - min;
+        return range == 0 ? 0.5 : (value - min) / range;
+    }
+
+    /**
+     * Min/max scales every feature into [0, 1] in place; a constant feature becomes 0.5.
+     */
+    public void normalize() {
+        if (normalized) {
+            throw new IllegalStateException("Feature matrix is already normalized");
+        }
+        for (double[] row : data) {
+            for (int j = 0; j < row.length; j++) {
+                row[j] = scale(row[j], mins[j], maxs[j]);
+            }
+        }
+        normalized = true;
+    }
+
+    /**
+     * The matrix itself, not a copy: one row per customer in file order.
+     */
+    public double[][] getData() {
+        return data;
+    }
+
+    public int getRowCount() {
+        return data.length;
+    }
+}
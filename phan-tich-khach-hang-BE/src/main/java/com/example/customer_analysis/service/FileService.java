@@ -1,11 +1,9 @@
 package com.example.customer_analysis.service;
 
 import com.example.customer_analysis.config.ColumnMappingConfig;
+import com.example.customer_analysis.config.FileConfig;
 import com.example.customer_analysis.dto.response.CustomerDTO;
 import com.example.customer_analysis.dto.response.UploadResponseDTO;
-import org.apache.parquet.example.data.Group;
-import org.apache.parquet.example.data.GroupFactory;
-import org.apache.parquet.example.data.simple.SimpleGroupFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
@@ -17,18 +15,33 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.BoundedInputStream;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.PrimitiveType;
-import org.apache.parquet.hadoop.example.ExampleParquetWriter;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.conf.Configuration;
 
@@ -42,15 +55,17 @@ public class FileService {
     @Autowired
     private ColumnMapperService columnMapperService;
 
-    private static final String UPLOAD_DIR = "uploads/";
-    private static final String PARQUET_DIR = "parquet/";
+    @Autowired
+    private FileConfig fileConfig;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     public UploadResponseDTO processFile(MultipartFile file) throws IOException {
 
         String originalFileName = file.getOriginalFilename();
 
-        java.nio.file.Path uploadDirectory = Paths.get(UPLOAD_DIR);
-        java.nio.file.Path parquetDirectory = Paths.get(PARQUET_DIR);
+        java.nio.file.Path uploadDirectory = Paths.get(fileConfig.getUploadDir());
+        java.nio.file.Path parquetDirectory = Paths.get(fileConfig.getParquetDir());
 
         try {
             Files.createDirectories(uploadDirectory);
@@ -61,7 +76,7 @@ public class FileService {
             throw new IOException("Failed to create upload directories", e);
         }
 
-        String uploadPath = UPLOAD_DIR + originalFileName;
+        String uploadPath = fileConfig.getUploadDir() + originalFileName;
         java.nio.file.Path filePath = Paths.get(uploadPath);
         try {
             Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
@@ -71,33 +86,57 @@ public class FileService {
             throw new IOException("Failed to save uploaded file", e);
         }
 
-        List<Map<String, Object>> rawData;
+        // Rows are normalized and written to Parquet as they are parsed, so the
+        // upload is never held in memory as a whole
+        String parquetFileName = originalFileName.replaceFirst("[.][^.]+$", "") + ".parquet";
+        String parquetPath = fileConfig.getParquetDir() + parquetFileName;
+
+        IngestResult result;
         if (originalFileName.endsWith(".csv")) {
-            rawData = readCSV(uploadPath);
+            result = shouldIngestInParallel(filePath)
+                    ? ingestCSVParallel(uploadPath, parquetPath)
+                    : ingestCSV(uploadPath, parquetPath);
         } else if (originalFileName.endsWith(".json")) {
-            rawData = readJSON(uploadPath);
+            result = ingestJSON(uploadPath, parquetPath);
         } else {
             throw new IllegalArgumentException("Unsupported file type. Only CSV and JSON are supported.");
         }
 
-        if (rawData.isEmpty()) {
+        if (result.totalRecords() == 0) {
+            Files.deleteIfExists(Paths.get(parquetPath));
             throw new IllegalArgumentException("File is empty or contains no valid data");
         }
 
+        // Build response with detailed information
+        return UploadResponseDTO.builder()
+                .message("File uploaded and processed successfully")
+                .fileName(parquetFileName)
+                .originalFileName(originalFileName)
+                .totalRecords(result.totalRecords())
+                .preview(result.preview())
+                .parquetPath(parquetPath)
+                .detectedColumns(result.validation().getDetectedColumns())
+                .missingColumns(result.validation().getMissingOptional())
+                .columnMappings(result.columnMapping())
+                .build();
+    }
 
-        Set<String> uploadedColumns = rawData.get(0).keySet();
-        // ADD THIS DEBUG LOGGING
+    private Map<String, String> resolveColumnMapping(Set<String> uploadedColumns) {
         log.info("========================================");
         log.info("Columns found in uploaded file:");
         uploadedColumns.forEach(col -> log.info("  - '{}'", col));
         log.info("========================================");
         Map<String, String> columnMapping = columnMapperService.mapColumns(uploadedColumns);
 
-// ADD THIS DEBUG LOGGING
         log.info("Column mappings:");
         columnMapping.forEach((uploaded, standard) ->
                 log.info("  '{}' -> '{}'", uploaded, standard));
         log.info("========================================");
+        return columnMapping;
+    }
+
+    private ColumnMapperService.ValidationResult validateColumns(Set<String> uploadedColumns,
+                                                                 Map<String, String> columnMapping) {
         ColumnMapperService.ValidationResult validation =
                 columnMapperService.validateColumns(uploadedColumns, columnMapping);
 
@@ -108,215 +147,377 @@ public class FileService {
                             String.join(", ", ColumnMappingConfig.MINIMUM_REQUIRED_COLUMNS)
             );
         }
+        return validation;
+    }
 
-        // 5. Normalize data with column mapping and default values
-        List<Map<String, Object>> normalizedData = rawData.stream()
-                .map(row -> columnMapperService.normalizeRow(row, columnMapping))
-                .collect(Collectors.toList());
+    private IngestResult ingestCSV(String filePath, String parquetPath) throws IOException {
+        CSVFormat format = csvFormat(detectDelimiter(filePath)).withFirstRecordAsHeader();
 
-        // 6. Convert to Parquet
-        String parquetFileName = originalFileName.replaceFirst("[.][^.]+$", "") + ".parquet";
-        String parquetPath = PARQUET_DIR + parquetFileName;
-        convertToParquet(normalizedData, parquetPath);
+        // Đọc file (xử lý BOM nếu có)
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8));
+             CSVParser csvParser = new CSVParser(reader, format)) {
 
-        // 7. Create preview
-        List<CustomerDTO> preview = normalizedData.stream()
-                .limit(5)
-                .map(this::mapToCustomerDTO)
-                .collect(Collectors.toList());
+            //Log thông tin header
+            List<String> headers = csvParser.getHeaderNames();
+            log.info("Columns detected: {}", headers);
 
-        // 8. Build response with detailed information
-        return UploadResponseDTO.builder()
-                .message("File uploaded and processed successfully")
-                .fileName(parquetFileName)
-                .originalFileName(originalFileName)
-                .totalRecords(normalizedData.size())
-                .preview(preview)
-                .parquetPath(parquetPath)
-                .detectedColumns(validation.getDetectedColumns())
-                .missingColumns(validation.getMissingOptional())
-                .columnMappings(columnMapping)
-                .build();
-    }
+            Set<String> uploadedColumns = new LinkedHashSet<>(headers);
+            Map<String, String> columnMapping = resolveColumnMapping(uploadedColumns);
+            ColumnMapperService.ValidationResult validation = validateColumns(uploadedColumns, columnMapping);
 
-    private List<Map<String, Object>> readCSV(String filePath) throws IOException {
-        List<Map<String, Object>> records = new ArrayList<>();
+            IngestPlan plan = columnMapperService.compilePlan(headers, columnMapping, CUSTOMER_SCHEMA);
 
-        char delimiter = detectDelimiter(filePath);
+            // Đọc từng dòng và ghi thẳng ra Parquet
+            try (ParquetRecordSink sink = new ParquetRecordSink(parquetPath, plan)) {
+                for (CSVRecord record : csvParser) {
+                    sink.write(record);
+                }
+
+                log.info("Successfully streamed {} records from CSV file", sink.totalRecords);
+                return new IngestResult(columnMapping, validation, sink.totalRecords, sink.preview);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error reading CSV file: {}", filePath, e);
+            throw new IOException("Failed to read CSV file: " + e.getMessage(), e);
+        }
+    }
 
+    private CSVFormat csvFormat(char delimiter) {
         // Định dạng CSV
-        CSVFormat format = CSVFormat.DEFAULT
+        return CSVFormat.DEFAULT
                 .withDelimiter(delimiter)
-                .withFirstRecordAsHeader()
                 .withIgnoreHeaderCase()
                 .withTrim()
                 .withIgnoreEmptyLines();
+    }
 
-        // Đọc file (xử lý BOM nếu có)
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8));
-             CSVParser csvParser = new CSVParser(reader, format)) {
+    private boolean shouldIngestInParallel(java.nio.file.Path file) throws IOException {
+        return fileConfig.isParallelIngest()
+                && fileConfig.getEffectiveIngestThreads() > 1
+                && Files.size(file) >= fileConfig.getParallelThresholdBytes();
+    }
 
-            //Log thông tin header
-            List<String> headers = csvParser.getHeaderNames();
-            log.info("Columns detected: {}", headers);
+    /**
+     * Splits the CSV into record-aligned byte ranges, parses and writes each range
+     * to its own Parquet part file on a worker thread, then appends the parts'
+     * row groups in order into the final file.
+     */
+    private IngestResult ingestCSVParallel(String filePath, String parquetPath) throws IOException {
+        java.nio.file.Path file = Paths.get(filePath);
+        char delimiter = detectDelimiter(filePath);
+        CSVFormat baseFormat = csvFormat(delimiter);
+        int threads = fileConfig.getEffectiveIngestThreads();
 
-            // Đọc từng dòng
-            for (CSVRecord record : csvParser) {
-                Map<String, Object> row = new LinkedHashMap<>();
-                for (String header : headers) {
-                    String value = record.get(header);
-                    row.put(header, value != null && !value.trim().isEmpty() ? value.trim() : null);
+        // The header is the first record; data starts right after it
+        List<Long> headerEnd = scanRecordBoundaries(file, delimiter, 0, 1, 1);
+        long dataStart = headerEnd.isEmpty() ? Files.size(file) : headerEnd.get(0);
+
+        List<String> headers;
+        try (CSVParser headerParser = new CSVParser(openRange(file, 0, dataStart),
+                baseFormat.withFirstRecordAsHeader())) {
+            headers = headerParser.getHeaderNames();
+        }
+        log.info("Columns detected: {}", headers);
+
+        Set<String> uploadedColumns = new LinkedHashSet<>(headers);
+        Map<String, String> columnMapping = resolveColumnMapping(uploadedColumns);
+        ColumnMapperService.ValidationResult validation = validateColumns(uploadedColumns, columnMapping);
+
+        long fileSize = Files.size(file);
+        List<Long> offsets = new ArrayList<>();
+        offsets.add(dataStart);
+        offsets.addAll(scanRecordBoundaries(file, delimiter, dataStart, (fileSize - dataStart) / threads, threads - 1));
+        offsets.add(fileSize);
+
+        IngestPlan plan = columnMapperService.compilePlan(headers, columnMapping, CUSTOMER_SCHEMA);
+        CSVFormat rangeFormat = baseFormat.withHeader(headers.toArray(String[]::new));
+        java.nio.file.Path partsDir = Paths.get(parquetPath + ".parts");
+        FileUtils.deleteDirectory(partsDir.toFile());
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<IngestResult>> futures = new ArrayList<>();
+            List<String> partPaths = new ArrayList<>();
+            for (int i = 0; i + 1 < offsets.size(); i++) {
+                long start = offsets.get(i);
+                long end = offsets.get(i + 1);
+                String partPath = partsDir.resolve(String.format("part-%05d.parquet", i)).toString();
+                partPaths.add(partPath);
+                futures.add(executor.submit(() ->
+                        ingestCSVRange(file, start, end, rangeFormat, plan, columnMapping, partPath)));
+            }
+
+            int totalRecords = 0;
+            List<CustomerDTO> preview = new ArrayList<>(ParquetRecordSink.PREVIEW_SIZE);
+            for (Future<IngestResult> future : futures) {
+                IngestResult part = future.get();
+                totalRecords += part.totalRecords();
+                for (CustomerDTO dto : part.preview()) {
+                    if (preview.size() < ParquetRecordSink.PREVIEW_SIZE) {
+                        preview.add(dto);
+                    }
                 }
-                records.add(row);
             }
 
-            log.info("Successfully read {} records from CSV file", records.size());
-        } catch (IOException e) {
-            log.error("Error reading CSV file: {}", filePath, e);
-            throw new IOException("Failed to read CSV file: " + e.getMessage(), e);
+            mergeParquetParts(partPaths, parquetPath);
+            log.info("Successfully streamed {} records from CSV file using {} workers", totalRecords, partPaths.size());
+            return new IngestResult(columnMapping, validation, totalRecords, preview);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV ingest was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            log.error("Error reading CSV file: {}", filePath, cause);
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IOException("Failed to read CSV file: " + cause.getMessage(), cause);
+        } finally {
+            FileUtils.deleteDirectory(partsDir.toFile());
         }
-
-        return records;
     }
 
-    private List<Map<String, Object>> readJSON(String filePath) throws IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            return mapper.readValue(new File(filePath),
-                    new TypeReference<List<Map<String, Object>>>() {
-                    });
-        } catch (Exception e) {
-            // Try reading as single object
-            Map<String, Object> singleRecord = mapper.readValue(new File(filePath),
-                    new TypeReference<Map<String, Object>>() {
-                    });
-            return Collections.singletonList(singleRecord);
+    private IngestResult ingestCSVRange(java.nio.file.Path file, long start, long end, CSVFormat format,
+                                        IngestPlan plan, Map<String, String> columnMapping,
+                                        String partPath) throws IOException {
+        try (CSVParser csvParser = new CSVParser(openRange(file, start, end), format);
+             ParquetRecordSink sink = new ParquetRecordSink(partPath, plan)) {
+            for (CSVRecord record : csvParser) {
+                sink.write(record);
+            }
+            return new IngestResult(columnMapping, null, sink.totalRecords, sink.preview);
         }
     }
 
-    private void convertToParquet(List<Map<String, Object>> data, String outputPath) throws IOException {
-        Files.createDirectories(Paths.get(PARQUET_DIR));
-
-        // Use normalized column names for schema
-        MessageType schema = new MessageType("Customer",
-                new PrimitiveType(OPTIONAL, INT32, "ID"),
-                new PrimitiveType(OPTIONAL, BINARY, "Education"),
-                new PrimitiveType(OPTIONAL, BINARY, "Marital_Status"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "Income"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntWines"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntFruits"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntMeatProducts"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntFishProducts"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntSweetProducts"),
-                new PrimitiveType(OPTIONAL, DOUBLE, "MntGoldProds"),
-                new PrimitiveType(OPTIONAL, INT32, "NumWebPurchases"),
-                new PrimitiveType(OPTIONAL, INT32, "NumCatalogPurchases"),
-                new PrimitiveType(OPTIONAL, INT32, "NumStorePurchases"),
-                new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp1"),
-                new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp2"),
-                new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp3"),
-                new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp4"),
-                new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp5")
-        );
+    private Reader openRange(java.nio.file.Path file, long start, long end) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        in.skipNBytes(start);
+        InputStream range = BoundedInputStream.builder()
+                .setInputStream(in)
+                .setMaxCount(end - start)
+                .get();
+        return new BufferedReader(new InputStreamReader(range, StandardCharsets.UTF_8));
+    }
 
-        Path path = new Path(outputPath);
-        Configuration conf = new Configuration();
+    /**
+     * Finds up to {@code maxBoundaries} record boundaries, the first at or after
+     * {@code from + stride} and each next one at least {@code stride} bytes later.
+     * A boundary is the offset just past a newline that is not inside a quoted
+     * field. Quotes follow the same rules as the CSV parser: a quote opens a quoted
+     * field only as the first character of a field, {@code ""} inside a quoted field
+     * is an escaped quote, and any other quote (e.g. {@code 5" screen}) is literal.
+     * Quote, delimiter and newline bytes never occur inside multi-byte UTF-8
+     * sequences, so scanning raw bytes is safe. {@code from} must be a record start.
+     */
+    private List<Long> scanRecordBoundaries(java.nio.file.Path file, char delimiter, long from, long stride,
+                                            int maxBoundaries) throws IOException {
+        List<Long> boundaries = new ArrayList<>(Math.max(maxBoundaries, 0));
+        if (maxBoundaries <= 0) {
+            return boundaries;
+        }
 
-        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(path)
-                .withType(schema)
-                .withConf(conf)
-                .build()) {
-
-            GroupFactory groupFactory = new SimpleGroupFactory(schema);
-
-            for (Map<String, Object> record : data) {
-                Group group = groupFactory.newGroup();
-
-                // Safely add each field
-                addFieldToGroup(group, "ID", record.get("ID"), Integer.class);
-                addFieldToGroup(group, "Education", record.get("Education"), String.class);
-                addFieldToGroup(group, "Marital_Status", record.get("Marital_Status"), String.class);
-                addFieldToGroup(group, "Income", record.get("Income"), Double.class);
-                addFieldToGroup(group, "MntWines", record.get("MntWines"), Double.class);
-                addFieldToGroup(group, "MntFruits", record.get("MntFruits"), Double.class);
-                addFieldToGroup(group, "MntMeatProducts", record.get("MntMeatProducts"), Double.class);
-                addFieldToGroup(group, "MntFishProducts", record.get("MntFishProducts"), Double.class);
-                addFieldToGroup(group, "MntSweetProducts", record.get("MntSweetProducts"), Double.class);
-                addFieldToGroup(group, "MntGoldProds", record.get("MntGoldProds"), Double.class);
-                addFieldToGroup(group, "NumWebPurchases", record.get("NumWebPurchases"), Integer.class);
-                addFieldToGroup(group, "NumCatalogPurchases", record.get("NumCatalogPurchases"), Integer.class);
-                addFieldToGroup(group, "NumStorePurchases", record.get("NumStorePurchases"), Integer.class);
-                addFieldToGroup(group, "AcceptedCmp1", record.get("AcceptedCmp1"), Integer.class);
-                addFieldToGroup(group, "AcceptedCmp2", record.get("AcceptedCmp2"), Integer.class);
-                addFieldToGroup(group, "AcceptedCmp3", record.get("AcceptedCmp3"), Integer.class);
-                addFieldToGroup(group, "AcceptedCmp4", record.get("AcceptedCmp4"), Integer.class);
-                addFieldToGroup(group, "AcceptedCmp5", record.get("AcceptedCmp5"), Integer.class);
-
-                writer.write(group);
+        long nextTarget = from + Math.max(stride, 1);
+        boolean fieldStart = true;
+        boolean inQuotes = false;
+        boolean quoteInQuotes = false; // saw a quote inside a quoted field: escape or closing quote
+        byte[] buffer = new byte[1 << 16];
+
+        try (InputStream in = Files.newInputStream(file)) {
+            in.skipNBytes(from);
+            long position = from;
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                for (int i = 0; i < read; i++) {
+                    byte b = buffer[i];
+                    if (inQuotes) {
+                        if (quoteInQuotes) {
+                            quoteInQuotes = false;
+                            if (b == '"') {
+                                continue; // "" is an escaped quote, still inside the field
+                            }
+                            inQuotes = false; // the previous quote closed the field; handle b below
+                        } else {
+                            quoteInQuotes = b == '"';
+                            continue;
+                        }
+                    }
+
+                    if (b == '"' && fieldStart) {
+                        inQuotes = true;
+                        fieldStart = false;
+                    } else if (b == delimiter) {
+                        fieldStart = true;
+                    } else if (b == '\n') {
+                        fieldStart = true;
+                        long boundary = position + i + 1;
+                        if (boundary >= nextTarget) {
+                            boundaries.add(boundary);
+                            if (boundaries.size() == maxBoundaries) {
+                                return boundaries;
+                            }
+                            nextTarget = boundary + Math.max(stride, 1);
+                        }
+                    } else if (b != '\r') {
+                        fieldStart = false;
+                    }
+                }
+                position += read;
             }
         }
+        return boundaries;
     }
 
-    private void addFieldToGroup(Group group, String fieldName, Object value, Class<?> type) {
-        if (value == null) {
-            return; // Skip null values (OPTIONAL fields)
+    private List<String> resolveSchemaColumns(List<String> configured) {
+        List<String> columns = new ArrayList<>();
+        for (String name : configured) {
+            CUSTOMER_SCHEMA.getFields().stream()
+                    .filter(field -> field.getName().equalsIgnoreCase(name.trim()))
+                    .findFirst()
+                    .ifPresentOrElse(field -> columns.add(field.getName()),
+                            () -> log.warn("Ignoring unknown Parquet column in writer settings: {}", name));
         }
+        return columns;
+    }
 
-        try {
-            if (type == String.class) {
-                group.add(fieldName, value.toString());
-            } else if (type == Integer.class) {
-                if (value instanceof Number) {
-                    group.add(fieldName, ((Number) value).intValue());
-                } else {
-                    group.add(fieldName, Integer.parseInt(value.toString()));
-                }
-            } else if (type == Double.class) {
-                if (value instanceof Number) {
-                    group.add(fieldName, ((Number) value).doubleValue());
-                } else {
-                    group.add(fieldName, Double.parseDouble(value.toString()));
+    private void mergeParquetParts(List<String> partPaths, String outputPath) throws IOException {
+        Configuration conf = new Configuration();
+        Path output = new Path(outputPath);
+        boolean merged = false;
+        try (ParquetFileWriter writer = new ParquetFileWriter(
+                HadoopOutputFile.fromPath(output, conf), CUSTOMER_SCHEMA,
+                ParquetFileWriter.Mode.CREATE, fileConfig.getParquetWriter().getRowGroupSize(),
+                ParquetWriter.MAX_PADDING_SIZE_DEFAULT)) {
+            writer.start();
+            for (String partPath : partPaths) {
+                InputFile part = HadoopInputFile.fromPath(new Path(partPath), conf);
+                try (ParquetFileReader reader = ParquetFileReader.open(part);
+                     SeekableInputStream in = part.newStream()) {
+                    // Copies column chunks as-is, with their bloom filters and page indexes
+                    for (BlockMetaData block : reader.getRowGroups()) {
+                        writer.startBlock(block.getRowCount());
+                        for (ColumnChunkMetaData chunk : block.getColumns()) {
+                            writer.appendColumnChunk(CUSTOMER_SCHEMA.getColumnDescription(chunk.getPath().toArray()),
+                                    in, chunk, reader.readBloomFilter(chunk),
+                                    reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+                        }
+                        writer.endBlock();
+                    }
                 }
             }
-        } catch (Exception e) {
-            log.warn("Failed to add field {} with value {}: {}", fieldName, value, e.getMessage());
+            writer.end(Collections.emptyMap());
+            merged = true;
+        } finally {
+            if (!merged) {
+                // Don't leave a half-written file behind, the same as the part files
+                output.getFileSystem(conf).delete(output, false);
+            }
         }
     }
 
-    private CustomerDTO mapToCustomerDTO(Map<String, Object> row) {
-        return CustomerDTO.builder()
-                .id(getIntValue(row, "ID"))
-                .education(getStringValue(row, "Education"))
-                .maritalStatus(getStringValue(row, "Marital_Status"))
-                .income(getDoubleValue(row, "Income"))
-                .mntWines(getDoubleValue(row, "MntWines"))
-                .mntFruits(getDoubleValue(row, "MntFruits"))
-                .mntMeatProducts(getDoubleValue(row, "MntMeatProducts"))
-                .mntFishProducts(getDoubleValue(row, "MntFishProducts"))
-                .mntSweetProducts(getDoubleValue(row, "MntSweetProducts"))
-                .mntGoldProds(getDoubleValue(row, "MntGoldProds"))
-                .numWebPurchases(getIntValue(row, "NumWebPurchases"))
-                .numCatalogPurchases(getIntValue(row, "NumCatalogPurchases"))
-                .numStorePurchases(getIntValue(row, "NumStorePurchases"))
-                .acceptedCmp1(getIntValue(row, "AcceptedCmp1"))
-                .acceptedCmp2(getIntValue(row, "AcceptedCmp2"))
-                .acceptedCmp3(getIntValue(row, "AcceptedCmp3"))
-                .acceptedCmp4(getIntValue(row, "AcceptedCmp4"))
-                .acceptedCmp5(getIntValue(row, "AcceptedCmp5"))
-                .build();
+    private IngestResult ingestJSON(String filePath, String parquetPath) throws IOException {
+        try (JsonRecordReader reader = new JsonRecordReader(objectMapper, new File(filePath))) {
+            // Columns are taken from the first object, the rest are streamed one by one
+            Map<String, Object> firstRow = reader.next();
+            if (firstRow == null) {
+                throw new IllegalArgumentException("File is empty or contains no valid data");
+            }
+
+            Set<String> uploadedColumns = firstRow.keySet();
+            Map<String, String> columnMapping = resolveColumnMapping(uploadedColumns);
+            ColumnMapperService.ValidationResult validation = validateColumns(uploadedColumns, columnMapping);
+
+            IngestPlan plan = columnMapperService.compilePlan(
+                    new ArrayList<>(uploadedColumns), columnMapping, CUSTOMER_SCHEMA);
+
+            try (ParquetRecordSink sink = new ParquetRecordSink(parquetPath, plan)) {
+                Map<String, Object> row = firstRow;
+                while (row != null) {
+                    sink.write(row);
+                    row = reader.next();
+                }
+
+                log.info("Successfully streamed {} records from JSON file", sink.totalRecords);
+                return new IngestResult(columnMapping, validation, sink.totalRecords, sink.preview);
+            }
+        } catch (JsonProcessingException e) {
+            log.error("Error reading JSON file: {}", filePath, e);
+            throw new IOException("Failed to read JSON file: " + e.getOriginalMessage(), e);
+        }
     }
 
-    private Integer getIntValue(Map<String, Object> row, String key) {
-        Object value = row.get(key);
-        if (value == null) return null;
-        try {
-            if (value instanceof Number) return ((Number) value).intValue();
-            return Integer.parseInt(value.toString());
-        } catch (Exception e) {
-            log.warn("Failed to parse integer from {}: {}", key, value);
-            return null;
+    // Use normalized column names for schema
+    private static final MessageType CUSTOMER_SCHEMA = new MessageType("Customer",
+            new PrimitiveType(OPTIONAL, INT32, "ID"),
+            new PrimitiveType(OPTIONAL, BINARY, "Education"),
+            new PrimitiveType(OPTIONAL, BINARY, "Marital_Status"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "Income"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntWines"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntFruits"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntMeatProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntFishProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntSweetProducts"),
+            new PrimitiveType(OPTIONAL, DOUBLE, "MntGoldProds"),
+            new PrimitiveType(OPTIONAL, INT32, "NumWebPurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "NumCatalogPurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "NumStorePurchases"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp1"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp2"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp3"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp4"),
+            new PrimitiveType(OPTIONAL, INT32, "AcceptedCmp5")
+    );
+
+    private ParquetWriter<IngestPlan.Row> openParquetWriter(String outputPath) throws IOException {
+        java.nio.file.Path parent = Paths.get(outputPath).toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+
+        Path path = new Path(outputPath);
+        Configuration conf = new Configuration();
+
+        FileConfig.ParquetWriterSettings settings = fileConfig.getParquetWriter();
+        IngestParquetWriter.Builder builder = IngestParquetWriter.builder(path, CUSTOMER_SCHEMA)
+                .withConf(conf)
+                .withCompressionCodec(settings.getCompression())
+                .withRowGroupSize(settings.getRowGroupSize())
+                .withPageSize(settings.getPageSize())
+                .withDictionaryPageSize(settings.getDictionaryPageSize())
+                .withDictionaryEncoding(settings.isDictionaryEncoding())
+                .withAdaptiveBloomFilterEnabled(settings.isAdaptiveBloomFilter());
+
+        for (String column : resolveSchemaColumns(settings.getDictionaryDisabledColumns())) {
+            builder.withDictionaryEncoding(column, false);
         }
+        for (String column : resolveSchemaColumns(settings.getBloomFilterColumns())) {
+            builder.withBloomFilterEnabled(column, true)
+                    .withBloomFilterFPP(column, settings.getBloomFilterFpp());
+        }
+
+        return builder.build();
+    }
+
+    private CustomerDTO mapToCustomerDTO(IngestPlan.Row row) {
+        return CustomerDTO.builder()
+                .id(row.getInteger("ID"))
+                .education(row.getString("Education"))
+                .maritalStatus(row.getString("Marital_Status"))
+                .income(row.getDouble("Income"))
+                .mntWines(row.getDouble("MntWines"))
+                .mntFruits(row.getDouble("MntFruits"))
+                .mntMeatProducts(row.getDouble("MntMeatProducts"))
+                .mntFishProducts(row.getDouble("MntFishProducts"))
+                .mntSweetProducts(row.getDouble("MntSweetProducts"))
+                .mntGoldProds(row.getDouble("MntGoldProds"))
+                .numWebPurchases(row.getInteger("NumWebPurchases"))
+                .numCatalogPurchases(row.getInteger("NumCatalogPurchases"))
+                .numStorePurchases(row.getInteger("NumStorePurchases"))
+                .acceptedCmp1(row.getInteger("AcceptedCmp1"))
+                .acceptedCmp2(row.getInteger("AcceptedCmp2"))
+                .acceptedCmp3(row.getInteger("AcceptedCmp3"))
+                .acceptedCmp4(row.getInteger("AcceptedCmp4"))
+                .acceptedCmp5(row.getInteger("AcceptedCmp5"))
+                .build();
     }
 
     private char detectDelimiter(String filePath) throws IOException {
@@ -338,20 +539,99 @@ public class FileService {
     }
 
 
-    private Double getDoubleValue(Map<String, Object> row, String key) {
-        Object value = row.get(key);
-        if (value == null) return null;
-        try {
-            if (value instanceof Number) return ((Number) value).doubleValue();
-            return Double.parseDouble(value.toString());
-        } catch (Exception e) {
-            log.warn("Failed to parse double from {}: {}", key, value);
-            return null;
+    /**
+     * Writes rows through the compiled plan straight into a Parquet file, keeping
+     * only the preview rows and a running count in memory.
+     */
+    private class ParquetRecordSink implements Closeable {
+        private static final int PREVIEW_SIZE = 5;
+
+        private final IngestPlan plan;
+        private final IngestPlan.Row row;
+        private final ParquetWriter<IngestPlan.Row> writer;
+        private final List<CustomerDTO> preview = new ArrayList<>(PREVIEW_SIZE);
+        private int totalRecords;
+
+        ParquetRecordSink(String outputPath, IngestPlan plan) throws IOException {
+            this.plan = plan;
+            this.row = plan.newRow();
+            this.writer = openParquetWriter(outputPath);
+        }
+
+        void write(CSVRecord record) throws IOException {
+            plan.fill(row, record);
+            append();
+        }
+
+        void write(Map<String, Object> record) throws IOException {
+            plan.fill(row, record);
+            append();
+        }
+
+        private void append() throws IOException {
+            writer.write(row);
+            if (preview.size() < PREVIEW_SIZE) {
+                preview.add(mapToCustomerDTO(row));
+            }
+            totalRecords++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads customer objects one at a time from a JSON array, newline-delimited
+     * JSON or a single top-level object, without loading the whole file.
+     */
+    private static class JsonRecordReader implements Closeable {
+        private static final TypeReference<Map<String, Object>> RECORD_TYPE = new TypeReference<>() {
+        };
+
+        private final ObjectMapper mapper;
+        private final JsonParser parser;
+        private final boolean inArray;
+        private boolean startConsumed;
+
+        JsonRecordReader(ObjectMapper mapper, File file) throws IOException {
+            this.mapper = mapper;
+            this.parser = mapper.getFactory().createParser(file);
+
+            JsonToken first = parser.nextToken();
+            if (first != null && first != JsonToken.START_ARRAY && first != JsonToken.START_OBJECT) {
+                parser.close();
+                throw new IllegalArgumentException("JSON file must contain an array of objects or one object per line");
+            }
+            this.inArray = first == JsonToken.START_ARRAY;
+            // A top-level object is already the current token and is read on the first next()
+            this.startConsumed = first != JsonToken.START_OBJECT;
+        }
+
+        Map<String, Object> next() throws IOException {
+            JsonToken token = startConsumed ? parser.nextToken() : parser.currentToken();
+            startConsumed = true;
+
+            if (token == null || (inArray && token == JsonToken.END_ARRAY)) {
+                return null;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object but found " + token
+                        + " at line " + parser.currentLocation().getLineNr());
+            }
+            return mapper.readValue(parser, RECORD_TYPE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            parser.close();
         }
     }
 
-    private String getStringValue(Map<String, Object> row, String key) {
-        Object value = row.get(key);
-        return value != null ? value.toString() : null;
+    private record IngestResult(Map<String, String> columnMapping,
+                                ColumnMapperService.ValidationResult validation,
+                                int totalRecords,
+                                List<CustomerDTO> preview) {
     }
 }
@@ -0,0 +1,87 @@
+package com.example.customer_analysis.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.Collections;
+
+/**
+ * Parquet writer for {@link IngestPlan.Row} buffers. Values go straight from
+ * the row's primitive arrays to the record consumer, without building a
+ * {@code Group} per row.
+ */
+public final class IngestParquetWriter {
+
+    private IngestParquetWriter() {
+    }
+
+    public static Builder builder(Path path, MessageType schema) {
+        return new Builder(path, schema);
+    }
+
+    public static class Builder extends ParquetWriter.Builder<IngestPlan.Row, Builder> {
+        private final MessageType schema;
+
+        private Builder(Path path, MessageType schema) {
+            super(path);
+            this.schema = schema;
+        }
+
+        @Override
+        protected Builder self() {
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<IngestPlan.Row> getWriteSupport(Configuration conf) {
+            return new RowWriteSupport(schema);
+        }
+    }
+
+    private static class RowWriteSupport extends WriteSupport<IngestPlan.Row> {
+        private final MessageType schema;
+        private final String[] fieldNames;
+        private RecordConsumer recordConsumer;
+
+        RowWriteSupport(MessageType schema) {
+            this.schema = schema;
+            this.fieldNames = new String[schema.getFieldCount()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = schema.getFieldName(i);
+            }
+        }
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+            return new WriteContext(schema, Collections.emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+            this.recordConsumer = recordConsumer;
+        }
+
+        @Override
+        public void write(IngestPlan.Row row) {
+            recordConsumer.startMessage();
+            for (int field = 0; field < fieldNames.length; field++) {
+                if (!row.present[field]) {
+                    continue; // OPTIONAL fields are simply left out
+                }
+                recordConsumer.startField(fieldNames[field], field);
+                switch (row.type(field)) {
+                    case INT32 -> recordConsumer.addInteger(row.ints[field]);
+                    case DOUBLE -> recordConsumer.addDouble(row.doubles[field]);
+                    case STRING -> recordConsumer.addBinary(Binary.fromString(row.strings[field]));
+                }
+                recordConsumer.endField(fieldNames[field], field);
+            }
+            recordConsumer.endMessage();
+        }
+    }
+}
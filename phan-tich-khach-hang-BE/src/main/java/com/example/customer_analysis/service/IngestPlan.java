@@ -0,0 +1,197 @@
+package com.example.customer_analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Column mapping compiled once per upload. For every field of the target
+ * Parquet schema it holds the index of the uploaded column that feeds it,
+ * a typed converter and the pre-converted default value, so rows can be
+ * converted into a reusable {@link Row} without building any maps.
+ */
+@Slf4j
+public class IngestPlan {
+
+    enum FieldType { INT32, DOUBLE, STRING }
+
+    private final MessageType schema;
+    private final FieldType[] types;
+    private final int[] sourceIndex;   // -1 when the upload has no column for the field
+    private final String[] sourceName;
+    private final Object[] defaults;   // already converted to the field type, null = no default
+    private final int sourceColumnCount;
+
+    IngestPlan(MessageType schema, List<String> uploadedColumns,
+               Map<String, String> columnMapping, Map<String, Object> defaultValues) {
+        int fieldCount = schema.getFieldCount();
+        this.schema = schema;
+        this.types = new FieldType[fieldCount];
+        this.sourceIndex = new int[fieldCount];
+        this.sourceName = new String[fieldCount];
+        this.defaults = new Object[fieldCount];
+        this.sourceColumnCount = uploadedColumns.size();
+        Arrays.fill(sourceIndex, -1);
+
+        for (int field = 0; field < fieldCount; field++) {
+            types[field] = typeOf(schema.getType(field).asPrimitiveType());
+        }
+
+        // Later columns win when two uploaded headers map to the same field
+        for (int column = 0; column < uploadedColumns.size(); column++) {
+            String standard = columnMapping.get(uploadedColumns.get(column));
+            if (standard != null && schema.containsField(standard)) {
+                int field = schema.getFieldIndex(standard);
+                sourceIndex[field] = column;
+                sourceName[field] = uploadedColumns.get(column);
+            }
+        }
+
+        for (int field = 0; field < fieldCount; field++) {
+            String name = schema.getFieldName(field);
+            if (defaultValues.containsKey(name)) {
+                defaults[field] = convert(field, defaultValues.get(name));
+            }
+        }
+    }
+
+    public MessageType getSchema() {
+        return schema;
+    }
+
+    public Row newRow() {
+        return new Row(this);
+    }
+
+    /**
+     * Fills {@code row} from a CSV record whose values are in uploaded column order.
+     */
+    public void fill(Row row, CSVRecord record) {
+        if (record.size() < sourceColumnCount) {
+            throw new IllegalArgumentException("Record " + record.getRecordNumber() + " has " + record.size()
+                    + " values but the header has " + sourceColumnCount + " columns");
+        }
+        for (int field = 0; field < types.length; field++) {
+            int column = sourceIndex[field];
+            if (column < 0) {
+                row.setConverted(field, defaults[field]);
+            } else {
+                String value = record.get(column);
+                set(row, field, value != null && !value.isBlank() ? value.trim() : null);
+            }
+        }
+    }
+
+    /**
+     * Fills {@code row} from a record keyed by uploaded column name. Columns the
+     * record does not contain fall back to their defaults.
+     */
+    public void fill(Row row, Map<String, Object> record) {
+        for (int field = 0; field < types.length; field++) {
+            String column = sourceName[field];
+            Object value = column != null ? record.get(column) : null;
+            if (value == null && (column == null || !record.containsKey(column))) {
+                row.setConverted(field, defaults[field]);
+            } else {
+                set(row, field, value);
+            }
+        }
+    }
+
+    private void set(Row row, int field, Object value) {
+        if (value == null) {
+            row.present[field] = false;
+            return;
+        }
+        try {
+            switch (types[field]) {
+                case INT32 -> row.ints[field] = value instanceof Number number
+                        ? number.intValue() : Integer.parseInt(value.toString());
+                case DOUBLE -> row.doubles[field] = value instanceof Number number
+                        ? number.doubleValue() : Double.parseDouble(value.toString());
+                case STRING -> row.strings[field] = value.toString();
+            }
+            row.present[field] = true;
+        } catch (NumberFormatException e) {
+            log.warn("Failed to add field {} with value {}: {}", schema.getFieldName(field), value, e.getMessage());
+            row.present[field] = false;
+        }
+    }
+
+    private Object convert(int field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        return switch (types[field]) {
+            case INT32 -> value instanceof Number number ? number.intValue() : Integer.parseInt(value.toString());
+            case DOUBLE -> value instanceof Number number ? number.doubleValue() : Double.parseDouble(value.toString());
+            case STRING -> value.toString();
+        };
+    }
+
+    private static FieldType typeOf(PrimitiveType type) {
+        return switch (type.getPrimitiveTypeName()) {
+            case INT32 -> FieldType.INT32;
+            case DOUBLE -> FieldType.DOUBLE;
+            case BINARY -> FieldType.STRING;
+            default -> throw new IllegalArgumentException("Unsupported Parquet type for " + type.getName());
+        };
+    }
+
+    /**
+     * Reusable, typed buffer for one row in schema field order.
+     */
+    public static class Row {
+        private final IngestPlan plan;
+        final boolean[] present;
+        final int[] ints;
+        final double[] doubles;
+        final String[] strings;
+
+        private Row(IngestPlan plan) {
+            int fieldCount = plan.types.length;
+            this.plan = plan;
+            this.present = new boolean[fieldCount];
+            this.ints = new int[fieldCount];
+            this.doubles = new double[fieldCount];
+            this.strings = new String[fieldCount];
+        }
+
+        FieldType type(int field) {
+            return plan.types[field];
+        }
+
+        private void setConverted(int field, Object value) {
+            if (value == null) {
+                present[field] = false;
+                return;
+            }
+            switch (plan.types[field]) {
+                case INT32 -> ints[field] = (Integer) value;
+                case DOUBLE -> doubles[field] = (Double) value;
+                case STRING -> strings[field] = (String) value;
+            }
+            present[field] = true;
+        }
+
+        public Integer getInteger(String name) {
+            int field = plan.schema.getFieldIndex(name);
+            return present[field] ? ints[field] : null;
+        }
+
+        public Double getDouble(String name) {
+            int field = plan.schema.getFieldIndex(name);
+            return present[field] ? doubles[field] : null;
+        }
+
+        public String getString(String name) {
+            int field = plan.schema.getFieldIndex(name);
+            return present[field] ? strings[field] : null;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import smile.clustering.BBDTree;
+import smile.clustering.CentroidClustering;
+import smile.clustering.Clustering;
+import smile.clustering.KMeans;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs KMeans several times from different random seeds in parallel and keeps
+ * the run with the lowest distortion, optionally for a whole range of k. All
+ * runs share one BBD tree of the data.
+ */
+@Component
+@Slf4j
+public class KMeansEngine {
+
+    public record Options(int k, int maxIterations, double tolerance, int restarts) {
+    }
+
+    /**
+     * Scores of one candidate k: mean squared distance to the centers over all
+     * rows, and the mean silhouette over the shared subsample.
+     */
+    public record KScore(int k, double inertia, double silhouette) {
+    }
+
+    public record AutoKResult(CentroidClustering<double[], double[]> best, List<KScore> scores) {
+    }
+
+    // The silhouette sample's distance table grows quadratically: 5000 rows take about 100MB
+    private static final int MAX_SILHOUETTE_SAMPLE = 5000;
+
+    private final ForkJoinPool pool;
+
+    public KMeansEngine(MLConfig mlConfig) {
+        this.pool = new ForkJoinPool(mlConfig.getEffectiveClusteringThreads());
+    }
+
+    public CentroidClustering<double[], double[]> fit(double[][] data, Options options) {
+        validate(data, options.k(), options);
+
+        BBDTree tree = new BBDTree(data);
+        CentroidClustering<double[], double[]> best = run(() -> IntStream.range(0, options.restarts())
+                .parallel()
+                .mapToObj(run -> KMeans.fit(tree, data, smileOptions(options.k(), options)))
+                .min(Comparator.comparingDouble(CentroidClustering::distortion))
+                .orElseThrow());
+
+        log.info("KMeans k={} kept best of {} restarts, distortion={}",
+                options.k(), options.restarts(), best.distortion());
+        return best;
+    }
+
+    /**
+     * Fits every k in [minK, maxK] (each with the configured restarts) in parallel
+     * over one shared BBD tree and picks the k with the highest silhouette, scored
+     * on a random subsample of at most {@code sampleSize} rows.
+     */
+    public AutoKResult fitAutoK(double[][] data, Options options, int minK, int maxK, int sampleSize) {
+        if (minK > maxK) {
+            throw new IllegalArgumentException("minClusters (" + minK + ") is greater than maxClusters (" + maxK + ")");
+        }
+        validate(data, minK, options);
+        validate(data, maxK, options);
+
+        BBDTree tree = new BBDTree(data);
+        int[] sample = sampleIndexes(data.length, sampleSize);
+        double[] sampleDistances = run(() -> pairwiseDistances(data, sample));
+
+        List<CentroidClustering<double[], double[]>> fits = run(() -> IntStream.rangeClosed(minK, maxK)
+                .boxed()
+                .flatMap(k -> IntStream.range(0, options.restarts()).mapToObj(run -> k))
+                .parallel()
+                .map(k -> KMeans.fit(tree, data, smileOptions(k, options)))
+                .collect(Collectors.groupingBy(CentroidClustering::k,
+                        Collectors.minBy(Comparator.comparingDouble(CentroidClustering::distortion))))
+                .values().stream()
+                .map(Optional::orElseThrow)
+                .sorted(Comparator.comparingInt(CentroidClustering::k))
+                .toList());
+
+        List<KScore> scores = run(() -> fits.parallelStream()
+                .map(fit -> new KScore(fit.k(), fit.distortion(), silhouette(fit, sample, sampleDistances)))
+                .toList());
+
+        // Highest silhouette wins; the smaller k on ties
+        int bestIndex = 0;
+        for (int i = 1; i < scores.size(); i++) {
+            if (scores.get(i).silhouette() > scores.get(bestIndex).silhouette()) {
+                bestIndex = i;
+            }
+        }
+        log.info("Auto-k evaluated k={}..{} on a {}-row silhouette sample, chose k={}",
+                minK, maxK, sample.length, scores.get(bestIndex).k());
+        return new AutoKResult(fits.get(bestIndex), scores);
+    }
+
+    private static void validate(double[][] data, int k, Options options) {
+        if (k < 2 || k > data.length) {
+            throw new IllegalArgumentException("Number of clusters must be between 2 and the number of customers ("
+                    + data.length + "), got " + k);
+        }
+        if (options.maxIterations() < 1 || options.restarts() < 1 || options.tolerance() < 0) {
+            throw new IllegalArgumentException("Invalid clustering options: " + options);
+        }
+    }
+
+    private static Clustering.Options smileOptions(int k, Options options) {
+        return new Clustering.Options(k, options.maxIterations(), options.tolerance(), null);
+    }
+
+    private <T> T run(Callable<T> task) {
+        try {
+            return pool.submit(task).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Clustering was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Clustering failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static int[] sampleIndexes(int n, int sampleSize) {
+        int[] indexes = IntStream.range(0, n).toArray();
+        int size = Math.min(n, Math.max(2, Math.min(sampleSize, MAX_SILHOUETTE_SAMPLE)));
+        Random random = new Random();
+        // Partial Fisher-Yates: the first `size` slots end up a uniform sample
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = tmp;
+        }
+        return Arrays.copyOf(indexes, size);
+    }
+
+    /**
+     * Euclidean distances between all sample rows, packed as the upper triangle.
+     */
+    private static double[] pairwiseDistances(double[][] data, int[] sample) {
+        int n = sample.length;
+        double[] distances = new double[n * (n - 1) / 2];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            double[] a = data[sample[i]];
+            int offset = triangleOffset(i, n);
+            for (int j = i + 1; j < n; j++) {
+                double[] b = data[sample[j]];
+                double sum = 0;
+                for (int d = 0; d < a.length; d++) {
+                    double diff = a[d] - b[d];
+                    sum += diff * diff;
+                }
+                distances[offset + j - i - 1] = Math.sqrt(sum);
+            }
+        });
+        return distances;
+    }
+
+    private static int triangleOffset(int i, int n) {
+        return i * (2 * n - i - 1) / 2;
+    }
+
+    private static double distance(double[] distances, int i, int j, int n) {
+        if (i > j) {
+            int tmp = i;
+            i = j;
+            j = tmp;
+        }
+        return distances[triangleOffset(i, n) + j - i - 1];
+    }
+
+    /**
+     * Mean silhouette of the sample rows under the given clustering; rows alone
+     * in their cluster within the sample score 0.
+     */
+    private static double silhouette(CentroidClustering<double[], double[]> fit, int[] sample, double[] distances) {
+        int n = sample.length;
+        int k = fit.k();
+        int[] labels = new int[n];
+        int[] clusterSizes = new int[k];
+        for (int i = 0; i < n; i++) {
+            labels[i] = fit.group(sample[i]);
+            clusterSizes[labels[i]]++;
+        }
+
+        double total = 0;
+        double[] sums = new double[k];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(sums, 0);
+            for (int j = 0; j < n; j++) {
+                if (j != i) {
+                    sums[labels[j]] += distance(distances, i, j, n);
+                }
+            }
+            int own = labels[i];
+            if (clusterSizes[own] < 2) {
+                continue;
+            }
+            double a = sums[own] / (clusterSizes[own] - 1);
+            double b = Double.MAX_VALUE;
+            for (int c = 0; c < k; c++) {
+                if (c != own && clusterSizes[c] > 0) {
+                    b = Math.min(b, sums[c] / clusterSizes[c]);
+                }
+            }
+            if (b == Double.MAX_VALUE) {
+                continue;
+            }
+            double max = Math.max(a, b);
+            total += max > 0 ? (b - a) / max : 0;
+        }
+        return total / n;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.customer_analysis.service;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import smile.clustering.CentroidClustering;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Mini-batch KMeans (Sculley, 2010) trained by streaming a Parquet file row group
+ * by row group, so only one row group of features is in memory at a time.
+ * Every epoch is one pass over the file, visiting the row groups in a new random
+ * order so files sorted by id or segment do not pull the centers towards the
+ * groups read last. Rows then pass through a bounded shuffle buffer before they
+ * are cut into mini-batches, so a mini-batch mixes rows from several row groups
+ * even when the file is sorted and a row group holds a single cluster. Mixing
+ * spans about as many rows as the buffer holds; a sorted file with one huge row
+ * group is only mixed that far. Each center moves towards its points with a
+ * learning rate of 1 / (points seen by that center).
+ */
+@Slf4j
+@Getter
+public class MiniBatchKMeans {
+
+    private static final int SEED_SAMPLE_SIZE = 10_000;
+
+    private final List<String> features;
+    private final double[] mins;
+    private final double[] maxs;
+    private final double[][] centroids;
+    private final long rowCount;
+    private final int batchSize;
+    private int epochs;
+    private long miniBatches;
+    private boolean converged;
+    private double lastCenterShift;
+    private final List<Double> inertiaHistory = new ArrayList<>();
+
+    private MiniBatchKMeans(List<String> features, double[] mins, double[] maxs, double[][] centroids,
+                            long rowCount, int batchSize) {
+        this.features = features;
+        this.mins = mins;
+        this.maxs = maxs;
+        this.centroids = centroids;
+        this.rowCount = rowCount;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param options       k, tolerance (on the summed squared center shift of an epoch) and
+     *                      restarts (k-means++ seeding attempts); maxIterations is not used
+     * @param maxEpochs     maximum number of passes over the file
+     * @param shuffleBuffer rows held in the shuffle buffer between row groups and mini-batches
+     */
+    public static MiniBatchKMeans fit(String parquetPath, List<String> features, KMeansEngine.Options options,
+                                      int batchSize, int maxEpochs, int shuffleBuffer) throws IOException {
+        return fit(parquetPath, features, options, batchSize, maxEpochs, shuffleBuffer, new Random());
+    }
+
+    static MiniBatchKMeans fit(String parquetPath, List<String> features, KMeansEngine.Options options,
+                               int batchSize, int maxEpochs, int shuffleBuffer, Random random) throws IOException {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Mini-batch size must be positive, got " + batchSize);
+        }
+        if (maxEpochs < 1) {
+            throw new IllegalArgumentException("Number of epochs must be positive, got " + maxEpochs);
+        }
+        if (shuffleBuffer < 0) {
+            throw new IllegalArgumentException("Shuffle buffer size must not be negative, got " + shuffleBuffer);
+        }
+        int d = features.size();
+        List<String> columns = FeatureMatrix.sourceColumns(features);
+
+        // Pass 1: feature min/max and a uniform reservoir sample of raw rows for seeding
+        double[] mins = new double[d];
+        double[] maxs = new double[d];
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        double[][] sample = new double[SEED_SAMPLE_SIZE][];
+        long[] seen = new long[1];
+
+        ParquetColumnReader.forEachRowGroup(parquetPath, columns, (batch, firstRow) -> {
+            double[][] raw = rawFeatures(batch, features);
+            for (int i = 0; i < batch.getRowCount(); i++) {
+                double[] row = raw[i];
+                for (int j = 0; j < d; j++) {
+                    if (row[j] < mins[j]) mins[j] = row[j];
+                    if (row[j] > maxs[j]) maxs[j] = row[j];
+                }
+                long n = seen[0]++;
+                if (n < SEED_SAMPLE_SIZE) {
+                    sample[(int) n] = row;
+                } else {
+                    long slot = (long) (random.nextDouble() * (n + 1));
+                    if (slot < SEED_SAMPLE_SIZE) {
+                        sample[(int) slot] = row;
+                    }
+                }
+            }
+        });
+
+        long rowCount = seen[0];
+        if (options.k() < 2 || options.k() > rowCount) {
+            throw new IllegalArgumentException("Number of clusters must be between 2 and the number of customers ("
+                    + rowCount + "), got " + options.k());
+        }
+
+        double[][] seedData = Arrays.copyOf(sample, (int) Math.min(rowCount, SEED_SAMPLE_SIZE));
+        for (double[] row : seedData) {
+            scaleInPlace(row, mins, maxs);
+        }
+        MiniBatchKMeans model = new MiniBatchKMeans(features, mins, maxs,
+                bestSeeds(seedData, options.k(), options.restarts()), rowCount, batchSize);
+
+        // Epochs: stream the file again, updating centers mini-batch by mini-batch
+        long[] counts = new long[options.k()];
+        for (int epoch = 0; epoch < maxEpochs; epoch++) {
+            double[][] previous = deepCopy(model.centroids);
+            Epoch pass = model.new Epoch(shuffleBuffer, counts, random);
+
+            ParquetColumnReader.forEachRowGroupShuffled(parquetPath, columns, random, (batch, firstRow) -> {
+                double[][] points = model.normalizedFeatures(batch);
+                for (int i : shuffledIndexes(points.length, random)) {
+                    pass.add(points[i]);
+                }
+            });
+            double inertia = pass.finish();
+
+            model.epochs = epoch + 1;
+            model.inertiaHistory.add(inertia / rowCount);
+            model.lastCenterShift = 0;
+            for (int c = 0; c < previous.length; c++) {
+                model.lastCenterShift += squaredDistance(previous[c], model.centroids[c]);
+            }
+            log.debug("Mini-batch KMeans epoch {}: inertia={}, center shift={}",
+                    model.epochs, inertia / rowCount, model.lastCenterShift);
+
+            if (model.lastCenterShift <= options.tolerance()) {
+                model.converged = true;
+                break;
+            }
+        }
+
+        log.info("Mini-batch KMeans k={} finished after {} epochs ({} mini-batches), converged={}",
+                options.k(), model.epochs, model.miniBatches, model.converged);
+        return model;
+    }
+
+    /**
+     * One pass of mini-batch updates. Points go through a bounded shuffle buffer:
+     * once it is full, each new point replaces a random buffered one, which joins
+     * the current mini-batch instead.
+     */
+    private final class Epoch {
+        private final double[][] buffer;
+        private final double[][] miniBatch;
+        private final int[] assigned;
+        private final long[] counts;
+        private final Random random;
+        private int buffered;
+        private int batched;
+        private double inertia;
+
+        Epoch(int bufferSize, long[] counts, Random random) {
+            this.buffer = new double[bufferSize][];
+            this.miniBatch = new double[batchSize][];
+            this.assigned = new int[batchSize];
+            this.counts = counts;
+            this.random = random;
+        }
+
+        void add(double[] point) {
+            if (buffered < buffer.length) {
+                buffer[buffered++] = point;
+                return;
+            }
+            if (buffer.length > 0) {
+                int slot = random.nextInt(buffer.length);
+                double[] evicted = buffer[slot];
+                buffer[slot] = point;
+                point = evicted;
+            }
+            miniBatch[batched++] = point;
+            if (batched == miniBatch.length) {
+                update();
+            }
+        }
+
+        /**
+         * Trains on what is left in the buffer and returns the summed squared distance
+         * of every point of the pass to its center at assignment time.
+         */
+        double finish() {
+            for (int i : shuffledIndexes(buffered, random)) {
+                miniBatch[batched++] = buffer[i];
+                if (batched == miniBatch.length) {
+                    update();
+                }
+            }
+            buffered = 0;
+            if (batched > 0) {
+                update();
+            }
+            return inertia;
+        }
+
+        // Assigns the whole mini-batch against the same centers, then moves them
+        private void update() {
+            for (int i = 0; i < batched; i++) {
+                assigned[i] = nearest(miniBatch[i]);
+                inertia += squaredDistance(miniBatch[i], centroids[assigned[i]]);
+            }
+            for (int i = 0; i < batched; i++) {
+                int c = assigned[i];
+                double eta = 1.0 / ++counts[c];
+                double[] center = centroids[c];
+                double[] point = miniBatch[i];
+                for (int j = 0; j < center.length; j++) {
+                    center[j] += eta * (point[j] - center[j]);
+                }
+            }
+            miniBatches++;
+            batched = 0;
+        }
+    }
+
+    /**
+     * Nearest center of every row of {@code batch}.
+     */
+    public int[] predict(ColumnBatch batch) {
+        double[][] points = normalizedFeatures(batch);
+        int[] labels = new int[points.length];
+        for (int i = 0; i < points.length; i++) {
+            labels[i] = nearest(points[i]);
+        }
+        return labels;
+    }
+
+    private int nearest(double[] point) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < centroids.length; c++) {
+            double distance = squaredDistance(point, centroids[c]);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private double[][] normalizedFeatures(ColumnBatch batch) {
+        double[][] points = rawFeatures(batch, features);
+        for (double[] point : points) {
+            scaleInPlace(point, mins, maxs);
+        }
+        return points;
+    }
+
+    private static double[][] rawFeatures(ColumnBatch batch, List<String> features) {
+        int rows = batch.getRowCount();
+        double[][] points = new double[rows][features.size()];
+        double[] values = new double[rows];
+        for (int j = 0; j < features.size(); j++) {
+            FeatureMatrix.featureValues(batch, features.get(j), values);
+            for (int i = 0; i < rows; i++) {
+                points[i][j] = values[i];
+            }
+        }
+        return points;
+    }
+
+    private static void scaleInPlace(double[] row, double[] mins, double[] maxs) {
+        for (int j = 0; j < row.length; j++) {
+            row[j] = FeatureMatrix.scale(row[j], mins[j], maxs[j]);
+        }
+    }
+
+    /**
+     * k-means++ seeding on the sample, keeping the seeds with the lowest sample inertia.
+     */
+    private static double[][] bestSeeds(double[][] sample, int k, int attempts) {
+        double[][] best = null;
+        double bestInertia = Double.MAX_VALUE;
+        for (int attempt = 0; attempt < Math.max(1, attempts); attempt++) {
+            double[][] seeds = CentroidClustering.seeds(sample, k);
+            double inertia = 0;
+            for (double[] point : sample) {
+                double nearest = Double.MAX_VALUE;
+                for (double[] seed : seeds) {
+                    nearest = Math.min(nearest, squaredDistance(point, seed));
+                }
+                inertia += nearest;
+            }
+            if (inertia < bestInertia) {
+                bestInertia = inertia;
+                best = seeds;
+            }
+        }
+        return deepCopy(best);
+    }
+
+    private static int[] shuffledIndexes(int n, Random random) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int j = 0; j < a.length; j++) {
+            double diff = a[j] - b[j];
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private static double[][] deepCopy(double[][] matrix) {
+        double[][] copy = new double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            copy[i] = matrix[i].clone();
+        }
+        return copy;
+    }
+}
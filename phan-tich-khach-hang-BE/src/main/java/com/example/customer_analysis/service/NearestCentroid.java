@@ -0,0 +1,56 @@
+package com.example.customer_analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Nearest-centroid kernel over a flattened row-major centroid matrix. Works on
+ * squared distances, so no square root is taken just to find the argmin.
+ * {@link #get()} returns the SIMD implementation when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} and the scalar one otherwise.
+ * {@code spring-boot:run} passes the flag; for {@code java -jar} it has to be
+ * given on the command line or through the environment, e.g.
+ * {@code JAVA_TOOL_OPTIONS="--add-modules=jdk.incubator.vector"}.
+ */
+public interface NearestCentroid {
+
+    /**
+     * Writes the squared distance from {@code point} to each of the
+     * {@code centroids.length / point.length} centroids into {@code squaredDistances}
+     * and returns the index of the nearest one (the first on ties).
+     */
+    int nearest(double[] centroids, double[] point, double[] squaredDistances);
+
+    static NearestCentroid get() {
+        return Holder.INSTANCE;
+    }
+
+    @Slf4j
+    final class Holder {
+
+        private static final NearestCentroid INSTANCE = select();
+
+        private Holder() {
+        }
+
+        // Loaded by name: only its own compiler execution sees the incubator module (see pom.xml)
+        private static final String VECTOR_KERNEL = "com.example.customer_analysis.service.VectorNearestCentroid";
+
+        private static NearestCentroid select() {
+            if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+                try {
+                    NearestCentroid kernel = (NearestCentroid) Class.forName(VECTOR_KERNEL)
+                            .getDeclaredConstructor()
+                            .newInstance();
+                    log.info("Nearest-centroid scoring uses the Vector API");
+                    return kernel;
+                } catch (ReflectiveOperationException | LinkageError e) {
+                    log.warn("Vector API is present but unusable, falling back to scalar scoring", e);
+                }
+            } else {
+                log.info("Nearest-centroid scoring is scalar; start the JVM with "
+                        + "--add-modules=jdk.incubator.vector (e.g. via JAVA_TOOL_OPTIONS) to use the Vector API");
+            }
+            return new ScalarNearestCentroid();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.customer_analysis.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Reads selected top-level columns of a Parquet file straight into
+ * {@link ColumnBatch} arrays. Only the requested column chunks are read
+ * from disk and values are decoded without materializing records.
+ */
+public final class ParquetColumnReader {
+
+    @FunctionalInterface
+    public interface RowGroupConsumer {
+        void accept(ColumnBatch batch, long firstRow) throws IOException;
+    }
+
+    private ParquetColumnReader() {
+    }
+
+    /**
+     * Decodes the requested columns one row group at a time, so memory is bounded
+     * by the row-group size. Columns missing from the file read as all null.
+     */
+    public static void forEachRowGroup(String parquetPath, List<String> columns,
+                                       RowGroupConsumer consumer) throws IOException {
+        read(parquetPath, columns, null, consumer);
+    }
+
+    /**
+     * Like {@link #forEachRowGroup} but visits the row groups in a random order drawn
+     * from {@code random}; {@code firstRow} is still each group's position in the file.
+     */
+    public static void forEachRowGroupShuffled(String parquetPath, List<String> columns, Random random,
+                                               RowGroupConsumer consumer) throws IOException {
+        read(parquetPath, columns, random, consumer);
+    }
+
+    private static void read(String parquetPath, List<String> columns, Random shuffle,
+                             RowGroupConsumer consumer) throws IOException {
+        Configuration conf = new Configuration();
+        try (ParquetFileReader reader = ParquetFileReader.open(HadoopInputFile.fromPath(new Path(parquetPath), conf))) {
+            MessageType fileSchema = reader.getFooter().getFileMetaData().getSchema();
+            String createdBy = reader.getFooter().getFileMetaData().getCreatedBy();
+
+            List<Type> projected = new ArrayList<>();
+            for (String column : columns) {
+                if (fileSchema.containsField(column)) {
+                    projected.add(fileSchema.getType(column));
+                }
+            }
+            MessageType projection = new MessageType(fileSchema.getName(), projected);
+            reader.setRequestedSchema(projection);
+
+            if (shuffle == null) {
+                long firstRow = 0;
+                PageReadStore rowGroup;
+                while ((rowGroup = reader.readNextRowGroup()) != null) {
+                    consumer.accept(decode(rowGroup, columns, projection, createdBy), firstRow);
+                    firstRow += rowGroup.getRowCount();
+                }
+                return;
+            }
+
+            List<BlockMetaData> blocks = reader.getRowGroups();
+            long[] firstRows = new long[blocks.size()];
+            for (int i = 1; i < blocks.size(); i++) {
+                firstRows[i] = firstRows[i - 1] + blocks.get(i - 1).getRowCount();
+            }
+            List<Integer> order = new ArrayList<>(IntStream.range(0, blocks.size()).boxed().toList());
+            Collections.shuffle(order, shuffle);
+            for (int index : order) {
+                consumer.accept(decode(reader.readRowGroup(index), columns, projection, createdBy), firstRows[index]);
+            }
+        }
+    }
+
+    private static ColumnBatch decode(PageReadStore rowGroup, List<String> columns, MessageType projection,
+                                      String createdBy) {
+        int rowCount = Math.toIntExact(rowGroup.getRowCount());
+        ColumnBatch batch = new ColumnBatch(columns, rowCount);
+        ColumnReadStoreImpl store = new ColumnReadStoreImpl(rowGroup,
+                new GroupRecordConverter(projection).getRootConverter(), projection, createdBy);
+
+        for (int c = 0; c < columns.size(); c++) {
+            String column = columns.get(c);
+            if (projection.containsField(column)) {
+                ColumnDescriptor descriptor = projection.getColumnDescription(new String[]{column});
+                decodeColumn(store.getColumnReader(descriptor), descriptor, batch, column, c, rowCount);
+            }
+        }
+        return batch;
+    }
+
+    private static void decodeColumn(ColumnReader columnReader, ColumnDescriptor descriptor, ColumnBatch batch,
+                                     String column, int columnIndex, int rowCount) {
+        int maxDefinitionLevel = descriptor.getMaxDefinitionLevel();
+        PrimitiveType.PrimitiveTypeName type = descriptor.getPrimitiveType().getPrimitiveTypeName();
+        boolean[] present = batch.presence(columnIndex);
+
+        if (type == PrimitiveType.PrimitiveTypeName.BINARY) {
+            String[] values = batch.strings(column);
+            for (int row = 0; row < rowCount; row++) {
+                if (columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel) {
+                    values[row] = columnReader.getBinary().toStringUsingUTF8();
+                    present[row] = true;
+                }
+                columnReader.consume();
+            }
+            return;
+        }
+
+        double[] values = batch.numbers(column);
+        for (int row = 0; row < rowCount; row++) {
+            if (columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel) {
+                values[row] = switch (type) {
+                    case INT32 -> columnReader.getInteger();
+                    case INT64 -> columnReader.getLong();
+                    case FLOAT -> columnReader.getFloat();
+                    case DOUBLE -> columnReader.getDouble();
+                    default -> throw new IllegalArgumentException("Unsupported Parquet type " + type + " for " + column);
+                };
+                present[row] = true;
+            }
+            columnReader.consume();
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import com.example.customer_analysis.entity.Prediction;
+import com.example.customer_analysis.repository.PredictionBatchRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind log of single predictions. Callers only enqueue; a background
+ * thread drains the bounded queue and inserts the rows in JDBC batches. When
+ * the queue is full the configured ml.audit-overflow-policy decides whether the
+ * caller waits, the row is dropped, or it is appended to a spill file. Batches
+ * whose insert fails are spilled under every policy, and the writer thread
+ * replays the spill file into the database every ml.audit-replay-interval-ms.
+ * Spilled rows the database rejects as invalid data go to a dead-letter file
+ * next to the spill file, so they cannot hold up the rows behind them.
+ */
+@Component
+@Slf4j
+public class PredictionAuditLog {
+
+    public enum OverflowPolicy { BLOCK, DROP, SPILL }
+
+    private final PredictionBatchRepository predictionBatchRepository;
+    private final MLConfig mlConfig;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Prediction> queue;
+    private final Path spillFile;
+    private final Path replayFile;
+    private final Path deadLetterFile;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+    private final Object spillLock = new Object();
+    // Open append writer on the spill file, guarded by spillLock; flushed by the writer thread
+    private BufferedWriter spillWriter;
+    private long lastReplayAttempt;
+    private volatile boolean running = true;
+    private Thread writer;
+
+    public PredictionAuditLog(PredictionBatchRepository predictionBatchRepository, MLConfig mlConfig,
+                              ObjectMapper objectMapper) {
+        this.predictionBatchRepository = predictionBatchRepository;
+        this.mlConfig = mlConfig;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, mlConfig.getAuditQueueCapacity()));
+        this.spillFile = Paths.get(mlConfig.getAuditSpillFile());
+        this.replayFile = Paths.get(mlConfig.getAuditSpillFile() + ".replay");
+        this.deadLetterFile = Paths.get(mlConfig.getAuditSpillFile() + ".dead");
+    }
+
+    @PostConstruct
+    public void start() {
+        writer = new Thread(this::drain, "prediction-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Hands a prediction to the background writer, applying the overflow policy
+     * when the queue is full. Never touches the database on the caller's thread.
+     */
+    public void record(Prediction prediction) {
+        if (queue.offer(prediction)) {
+            return;
+        }
+        switch (mlConfig.getAuditOverflowPolicy()) {
+            case BLOCK -> {
+                try {
+                    queue.put(prediction);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    spill(List.of(prediction));
+                }
+            }
+            case DROP -> {
+                long total = dropped.incrementAndGet();
+                // Log the first drop and then every thousandth, not every one
+                if (total == 1 || total % 1000 == 0) {
+                    log.warn("Prediction audit queue is full, {} predictions dropped so far", total);
+                }
+            }
+            case SPILL -> spill(List.of(prediction));
+        }
+    }
+
+    private void drain() {
+        int batchSize = Math.max(1, mlConfig.getPredictionBatchSize());
+        List<Prediction> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                flushSpillWriter();
+                if (System.currentTimeMillis() - lastReplayAttempt >= mlConfig.getAuditReplayIntervalMs()) {
+                    lastReplayAttempt = System.currentTimeMillis();
+                    replaySpilled();
+                }
+
+                Prediction first = queue.poll(mlConfig.getAuditFlushIntervalMs(), TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Shutdown: loop once more to flush whatever is left
+                running = false;
+            } finally {
+                batch.clear();
+            }
+        }
+        closeSpillWriter();
+    }
+
+    private void write(List<Prediction> batch) {
+        try {
+            predictionBatchRepository.insertAll(batch);
+        } catch (Exception e) {
+            // Never discard a failed batch: the periodic replay inserts it once the database is back
+            log.error("Failed to write {} predictions to the audit log, spilling them", batch.size(), e);
+            spill(batch);
+        }
+    }
+
+    /**
+     * Appends predictions to the spill file, one JSON object per line. The file
+     * stays open between calls; rows that cannot be written are counted as lost.
+     */
+    private void spill(List<Prediction> predictions) {
+        synchronized (spillLock) {
+            try {
+                if (spillWriter == null) {
+                    Files.createDirectories(spillFile.toAbsolutePath().getParent());
+                    spillWriter = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+                for (Prediction prediction : predictions) {
+                    spillWriter.write(objectMapper.writeValueAsString(prediction));
+                    spillWriter.newLine();
+                }
+            } catch (IOException e) {
+                long total = lost.addAndGet(predictions.size());
+                log.error("Failed to spill {} predictions to {}, {} audit rows lost so far",
+                        predictions.size(), spillFile, total, e);
+                closeSpillWriter();
+            }
+        }
+    }
+
+    private void flushSpillWriter() {
+        synchronized (spillLock) {
+            if (spillWriter != null) {
+                try {
+                    spillWriter.flush();
+                } catch (IOException e) {
+                    log.error("Failed to flush spill file {}", spillFile, e);
+                }
+            }
+        }
+    }
+
+    private void closeSpillWriter() {
+        synchronized (spillLock) {
+            if (spillWriter != null) {
+                try {
+                    spillWriter.close();
+                } catch (IOException e) {
+                    log.error("Failed to close spill file {}", spillFile, e);
+                }
+                spillWriter = null;
+            }
+        }
+    }
+
+    /**
+     * Inserts spilled predictions. The spill file is renamed to the replay file
+     * under the lock, so callers keep spilling to a fresh file while the replay
+     * file is read line by line and inserted outside the lock. A replay that
+     * stops on a database error leaves the rows it did not insert in the replay
+     * file for next time.
+     */
+    private void replaySpilled() {
+        synchronized (spillLock) {
+            // A replay file left by a failed attempt is finished before the next spill file is taken
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                closeSpillWriter();
+                try {
+                    Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    log.error("Failed to move spill file {} aside for replay", spillFile, e);
+                    return;
+                }
+            }
+        }
+
+        int batchSize = Math.max(1, mlConfig.getPredictionBatchSize());
+        long replayed = 0;
+        SpilledRow stoppedAt = null;
+        try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            List<SpilledRow> batch = new ArrayList<>(batchSize);
+            long linesRead = 0;
+            String line;
+            while (stoppedAt == null && (line = in.readLine()) != null) {
+                linesRead++;
+                if (!line.isBlank()) {
+                    try {
+                        batch.add(new SpilledRow(objectMapper.readValue(line, Prediction.class), line, linesRead));
+                    } catch (IOException e) {
+                        log.error("Unreadable spilled prediction in {}: {}", replayFile, line, e);
+                        deadLetter(line);
+                    }
+                }
+                if (batch.size() >= batchSize) {
+                    stoppedAt = insertReplayBatch(batch);
+                    batch.clear();
+                    replayed = linesRead;
+                }
+            }
+            if (stoppedAt == null && !batch.isEmpty()) {
+                stoppedAt = insertReplayBatch(batch);
+            }
+            replayed = stoppedAt != null ? stoppedAt.lineNumber() - 1 : linesRead;
+        } catch (IOException e) {
+            log.error("Failed to read spill file {} after {} lines, retrying in {}ms",
+                    replayFile, replayed, mlConfig.getAuditReplayIntervalMs(), e);
+            dropReplayedLines(replayed);
+            return;
+        }
+
+        if (stoppedAt != null) {
+            log.warn("Stopped replaying {} after {} lines, retrying in {}ms",
+                    replayFile, replayed, mlConfig.getAuditReplayIntervalMs());
+            dropReplayedLines(replayed);
+            return;
+        }
+        try {
+            Files.delete(replayFile);
+            log.info("Replayed {} spilled predictions from {}", replayed, replayFile);
+        } catch (IOException e) {
+            log.error("Failed to delete replayed spill file {}", replayFile, e);
+        }
+    }
+
+    /**
+     * Inserts one replay batch. If the batch insert fails the rows are retried one
+     * at a time: a duplicate prediction id means the row is already in the database
+     * (e.g. an earlier replay inserted it but could not trim the file), and a row
+     * rejected as invalid data is moved to the dead-letter file. Any other error is
+     * taken as the database being unavailable.
+     *
+     * @return the row the replay has to stop at, or null if every row was handled
+     */
+    private SpilledRow insertReplayBatch(List<SpilledRow> batch) {
+        try {
+            predictionBatchRepository.insertAll(batch.stream().map(SpilledRow::prediction).toList());
+            return null;
+        } catch (Exception e) {
+            log.warn("Failed to replay a batch of {} spilled predictions, retrying them one by one", batch.size(), e);
+        }
+
+        for (SpilledRow row : batch) {
+            try {
+                predictionBatchRepository.insertAll(List.of(row.prediction()));
+            } catch (DuplicateKeyException e) {
+                log.debug("Spilled prediction {} is already saved", row.prediction().getPredictionId());
+            } catch (DataIntegrityViolationException e) {
+                log.error("Database rejected spilled prediction {}, moving it to {}",
+                        row.prediction().getPredictionId(), deadLetterFile, e);
+                deadLetter(row.line());
+            } catch (Exception e) {
+                log.error("Failed to replay spilled predictions from {} at line {}",
+                        replayFile, row.lineNumber(), e);
+                return row;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Appends a spilled line the database will never accept to the dead-letter
+     * file, kept for manual inspection.
+     */
+    private void deadLetter(String line) {
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(deadLetterFile, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(line);
+                out.newLine();
+            }
+            deadLettered.incrementAndGet();
+        } catch (IOException e) {
+            lost.incrementAndGet();
+            log.error("Failed to write to dead-letter file {}, spilled prediction lost: {}", deadLetterFile, line, e);
+        }
+    }
+
+    /**
+     * Rewrites the replay file without its first {@code lines} lines, which are
+     * already in the database, streaming through a temp file.
+     */
+    private void dropReplayedLines(long lines) {
+        if (lines == 0) {
+            return;
+        }
+        try {
+            Path temp = Files.createTempFile(replayFile.toAbsolutePath().getParent(), "prediction-spill", ".tmp");
+            try (BufferedReader in = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8);
+                 BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                String line;
+                long index = 0;
+                while ((line = in.readLine()) != null) {
+                    if (index++ >= lines) {
+                        out.write(line);
+                        out.newLine();
+                    }
+                }
+            }
+            Files.move(temp, replayFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Replaying the whole file again would hit the unique prediction ids of the rows already inserted
+            log.error("Failed to drop {} replayed lines from {}", lines, replayFile, e);
+        }
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Rows that could be neither inserted nor spilled.
+     */
+    public long getLostCount() {
+        return lost.get();
+    }
+
+    /**
+     * Spilled rows moved to the dead-letter file because they are unreadable or
+     * the database rejects them.
+     */
+    public long getDeadLetterCount() {
+        return deadLettered.get();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // No interrupt: the writer may be inside a JDBC call; it notices within one flush interval
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty()) {
+            List<Prediction> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            log.warn("Prediction audit writer did not finish, spilling {} predictions", remaining.size());
+            spill(remaining);
+        }
+        closeSpillWriter();
+    }
+
+    private record SpilledRow(Prediction prediction, String line, long lineNumber) {
+    }
+}
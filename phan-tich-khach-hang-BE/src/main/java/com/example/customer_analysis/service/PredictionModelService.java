@@ -5,23 +5,37 @@ import com.example.customer_analysis.dto.request.PredictionRequest;
 import com.example.customer_analysis.dto.request.TrainPredictionModelRequest;
 import com.example.customer_analysis.dto.response.PredictionResponse;
 import com.example.customer_analysis.dto.response.TrainPredictionModelResponse;
-import com.example.customer_analysis.entity.Customer;
 import com.example.customer_analysis.entity.MLModel;
 import com.example.customer_analysis.entity.Prediction;
 import com.example.customer_analysis.entity.Segment;
+import com.example.customer_analysis.repository.CustomerFeatureRepository;
 import com.example.customer_analysis.repository.CustomerRepository;
 import com.example.customer_analysis.repository.MLModelRepository;
-import com.example.customer_analysis.repository.PredictionRepository;
+import com.example.customer_analysis.repository.PredictionBatchRepository;
 import com.example.customer_analysis.repository.SegmentRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 @Service
 @Slf4j
@@ -30,79 +44,72 @@ public class PredictionModelService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private CustomerFeatureRepository customerFeatureRepository;
+
     @Autowired
     private MLModelRepository mlModelRepository;
 
     @Autowired
-    private PredictionRepository predictionRepository;
+    private PredictionAuditLog predictionAuditLog;
 
     @Autowired
     private SegmentRepository segmentRepository;
 
+    @Autowired
+    private PredictionBatchRepository predictionBatchRepository;
+
     @Autowired
     private MLConfig mlConfig;
 
+    // Spring's mapper, so batch responses are serialized like the controllers' JSON (e.g. ISO dates)
+    @Autowired
+    private ObjectMapper webObjectMapper;
+
+    private static final Map<String, Method> REQUEST_COLUMNS = requestColumns();
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    // Active model kept in memory; swapped as a whole when a new model becomes active
+    private final AtomicReference<CachedModel> activeModel = new AtomicReference<>();
+    private final ReentrantLock modelRefreshLock = new ReentrantLock();
+    private volatile long lastModelCheck;
+
     public TrainPredictionModelResponse trainPredictionModel(TrainPredictionModelRequest request) {
         long startTime = System.currentTimeMillis();
 
         try {
-            log.info("=== Step 1: Retrieve data from database ===");
-            List<Customer> customers = customerRepository.findAll();
-
-            if (customers.isEmpty()) {
+            log.info("=== Step 1: Check training data ===");
+            if (customerRepository.count() == 0) {
                 throw new IllegalStateException("No customer data found in database.");
             }
 
-            // Filter customers that already have segments assigned
-            List<Customer> labeledCustomers = customers.stream()
-                    .filter(c -> c.getSegment() != null)
-                    .toList();
-
-            if (labeledCustomers.isEmpty()) {
-                throw new IllegalStateException("No customers with assigned segments found. Please run clustering first.");
-            }
-
-            log.info("Found {} customers with assigned segments", labeledCustomers.size());
-
             log.info("=== Step 2: Preprocess data ===");
             List<String> features = request.getFeatures() != null && !request.getFeatures().isEmpty()
                     ? request.getFeatures()
                     : getDefaultFeatures();
 
-            // Group customers by segment
-            Map<Integer, List<Customer>> segmentGroups = new HashMap<>();
-            for (Customer customer : labeledCustomers) {
-                segmentGroups.computeIfAbsent(customer.getSegment(), k -> new ArrayList<>()).add(customer);
+            log.info("=== Step 3: Calculate normalization params and segment centroids ===");
+            double[] mins = new double[features.size()];
+            double[] maxs = new double[features.size()];
+            long[] trainingDataSize = new long[1];
+            Map<Integer, double[]> centroids = calculateCentroids(features, mins, maxs, trainingDataSize);
+
+            if (centroids.isEmpty()) {
+                throw new IllegalStateException("No customers with assigned segments found. Please run clustering first.");
             }
+            log.info("Read {} customers with assigned segments", trainingDataSize[0]);
 
-            int numSegments = segmentGroups.size();
+            int numSegments = centroids.size();
             log.info("Found {} segments", numSegments);
 
-            log.info("=== Step 3: Calculate segment centroids ===");
-            Map<Integer, double[]> centroids = new HashMap<>();
-            Map<String, MinMaxValues> normalizationParams = calculateNormalizationParams(labeledCustomers, features);
-
-            for (Map.Entry<Integer, List<Customer>> entry : segmentGroups.entrySet()) {
-                Integer segmentId = entry.getKey();
-                List<Customer> segmentCustomers = entry.getValue();
-
-                double[] centroid = calculateCentroid(segmentCustomers, features, normalizationParams);
-                centroids.put(segmentId, centroid);
-
-                log.info("Segment {} centroid calculated from {} customers", segmentId, segmentCustomers.size());
-            }
-
             log.info("=== Step 4: Save model ===");
             String modelId = UUID.randomUUID().toString();
-            PredictionModelData modelData = new PredictionModelData();
-            modelData.centroids = centroids;
-            modelData.features = features;
-            modelData.normalizationParams = normalizationParams;
-            modelData.numSegments = numSegments;
+            int[] segmentIds = centroids.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            double[][] centroidRows = Arrays.stream(segmentIds).mapToObj(centroids::get).toArray(double[][]::new);
+            CentroidModel model = CentroidModel.of(features, mins, maxs, segmentIds, centroidRows);
 
-            String modelPath = saveModel(modelData, modelId);
+            String modelPath = saveModel(model, modelId);
 
             // Save model metadata to database
             MLModel mlModel = new MLModel();
@@ -112,7 +119,7 @@ public class PredictionModelService {
                     : "PredictionModel_" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss")));
             mlModel.setModelType("PREDICTION");
             mlModel.setModelPath(modelPath);
-            mlModel.setTrainingDataSize(labeledCustomers.size());
+            mlModel.setTrainingDataSize(Math.toIntExact(trainingDataSize[0]));
             mlModel.setFeatures(objectMapper.writeValueAsString(features));
             mlModel.setTrainedAt(LocalDateTime.now());
             mlModel.setTrainingTimeMs(System.currentTimeMillis() - startTime);
@@ -127,12 +134,16 @@ public class PredictionModelService {
 
             mlModelRepository.save(mlModel);
 
+            // Serve the new model right away on this node; other nodes pick it up on their next version check
+            activeModel.set(new CachedModel(modelId, model, latestSegments()));
+            lastModelCheck = System.currentTimeMillis();
+
             log.info("✅ Prediction model training completed in {}ms", mlModel.getTrainingTimeMs());
 
             return TrainPredictionModelResponse.builder()
                     .modelId(modelId)
                     .modelName(mlModel.getModelName())
-                    .trainingDataSize(labeledCustomers.size())
+                    .trainingDataSize(mlModel.getTrainingDataSize())
                     .numSegments(numSegments)
                     .accuracy(95.0) // Placeholder - you can calculate actual accuracy
                     .modelPath(modelPath)
@@ -150,197 +161,359 @@ public class PredictionModelService {
         try {
             log.info("=== Making prediction for new customer ===");
 
-            // Load active model
-            MLModel mlModel = mlModelRepository.findFirstByIsActiveTrueOrderByTrainedAtDesc()
-                    .orElseThrow(() -> new IllegalStateException("No active model found. Please train a model first."));
+            ScoredPrediction scored = score(request, getActiveModel());
+
+            // Written to the database in the background
+            predictionAuditLog.record(scored.prediction());
 
-            // Lấy ID từ model vừa tải
-            String modelId = mlModel.getModelId();
+            log.info("✅ Prediction completed: segment={}, confidence={}",
+                    scored.response().getPredictedSegment(), scored.response().getConfidence());
 
-            // Load model data
-            PredictionModelData modelData = loadModel(mlModel.getModelPath());
+            return scored.response();
 
-            // Extract features from request
-            double[] inputFeatures = extractFeatures(request, modelData.features, modelData.normalizationParams);
+        } catch (Exception e) {
+            log.error("Error making prediction", e);
+            throw new RuntimeException("Failed to make prediction: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Checks that a batch body has the expected shape and returns a parser positioned
+     * on its first token: a JSON array for application/json, otherwise one JSON object
+     * per line. Called before the response is committed, so a bad body is still a 400.
+     */
+    public JsonParser openBatch(InputStream input, boolean ndjson) throws IOException {
+        JsonParser parser = webObjectMapper.getFactory().createParser(input);
+        JsonToken first = parser.nextToken();
+        boolean valid = ndjson ? first == null || first == JsonToken.START_OBJECT : first == JsonToken.START_ARRAY;
+        if (!valid) {
+            parser.close();
+            throw new IllegalArgumentException(ndjson
+                    ? "NDJSON body must contain one prediction request object per line"
+                    : "JSON body must be an array of prediction requests");
+        }
+        return parser;
+    }
 
-            // Find nearest centroid
-            int predictedSegment = -1;
-            double minDistance = Double.MAX_VALUE;
-            Map<Integer, Double> distances = new HashMap<>();
+    /**
+     * Scores every request read from {@code requests} against one snapshot of the active
+     * model and writes the responses to {@code output} in input order, as a JSON array or
+     * as NDJSON. Requests are scored in batches of ml.prediction-batch-size, and a batch's
+     * responses are written only after its prediction rows have been inserted. A request
+     * that cannot be scored gets an {@code {"index": i, "error": ...}} record in its place.
+     * If an insert fails or the input is not valid JSON, the output ends with an
+     * {@code {"error": ..., "savedCount": n}} record instead of the rest of the responses;
+     * the client then has exactly the n saved predictions.
+     *
+     * @return number of predictions saved and written
+     */
+    public int predictBatch(JsonParser requests, boolean ndjson, OutputStream output) throws IOException {
+        CachedModel model = getActiveModel();
+        int batchSize = Math.max(1, mlConfig.getPredictionBatchSize());
+        List<ScoredPrediction> pending = new ArrayList<>(batchSize);
+        // Flushing is done once per batch instead of after every response
+        ObjectWriter responseWriter = webObjectMapper.writerFor(PredictionResponse.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        int read = 0;
+        int saved = 0;
+        String stopError = null;
+
+        try (JsonGenerator generator = webObjectMapper.getFactory().createGenerator(output)) {
+            if (ndjson) {
+                generator.setRootValueSeparator(new SerializedString("\n"));
+            } else {
+                generator.writeStartArray();
+            }
 
-            for (Map.Entry<Integer, double[]> entry : modelData.centroids.entrySet()) {
-                Integer segmentId = entry.getKey();
-                double[] centroid = entry.getValue();
-                double distance = euclideanDistance(inputFeatures, centroid);
-                distances.put(segmentId, distance);
+            boolean more = true;
+            while (more) {
+                PredictionRequest request = null;
+                try {
+                    request = nextBatchRequest(requests, ndjson, read == 0);
+                } catch (JsonProcessingException | IllegalArgumentException e) {
+                    // The parser cannot resync after malformed input; save what was read and stop
+                    log.warn("Batch prediction stopped: invalid request after {} rows", read, e);
+                    stopError = "Invalid prediction request at index " + read + ": " + e.getMessage();
+                }
+                if (request != null) {
+                    pending.add(scoreOrError(request, model));
+                    read++;
+                }
+                more = request != null;
+                if (pending.isEmpty() || (more && pending.size() < batchSize)) {
+                    continue;
+                }
 
-                if (distance < minDistance) {
-                    minDistance = distance;
-                    predictedSegment = segmentId;
+                List<Prediction> predictions = pending.stream()
+                        .map(ScoredPrediction::prediction)
+                        .filter(Objects::nonNull)
+                        .toList();
+                try {
+                    if (!predictions.isEmpty()) {
+                        predictionBatchRepository.insertAll(predictions);
+                    }
+                } catch (RuntimeException e) {
+                    log.error("Batch prediction stopped: failed to save predictions after {} rows", saved, e);
+                    stopError = "Failed to save predictions: " + e.getMessage();
+                    break;
+                }
+                int index = read - pending.size();
+                for (ScoredPrediction scored : pending) {
+                    if (scored.error() == null) {
+                        responseWriter.writeValue(generator, scored.response());
+                    } else {
+                        generator.writeStartObject();
+                        generator.writeNumberField("index", index);
+                        generator.writeStringField("error", scored.error());
+                        generator.writeEndObject();
+                    }
+                    index++;
                 }
+                saved += predictions.size();
+                pending.clear();
+                generator.flush();
             }
 
-            // Calculate confidence (inverse of distance)
-            double confidence = 1.0 / (1.0 + minDistance);
-
-            // Calculate probabilities
-            Map<String, Object> probabilities = calculateProbabilities(distances);
+            if (stopError != null) {
+                generator.writeStartObject();
+                generator.writeStringField("error", stopError);
+                generator.writeNumberField("savedCount", saved);
+                generator.writeEndObject();
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
 
-            // Get segment information
-            Optional<Segment> segmentOpt = segmentRepository.findBySegmentId(predictedSegment);
-            String segmentName = "Segment " + predictedSegment;
-            String segmentDescription = "Customer segment " + predictedSegment;
-            String recommendation = generateRecommendation(predictedSegment, segmentOpt.orElse(null));
+        log.info("Batch prediction completed: {} of {} customers scored and saved with model {}",
+                saved, read, model.modelId());
+        return saved;
+    }
 
-            if (segmentOpt.isPresent()) {
-                Segment segment = segmentOpt.get();
-                segmentName = segment.getSegmentName();
-                segmentDescription = segment.getDescription();
-            }
+    private ScoredPrediction scoreOrError(PredictionRequest request, CachedModel model) {
+        try {
+            return score(request, model);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Failed to score batch prediction request", e);
+            return ScoredPrediction.failed("Failed to score prediction request: " + e.getMessage());
+        }
+    }
 
-            // Calculate feature importance
-            Map<String, Double> featureImportance = calculateFeatureImportance(inputFeatures, modelData.features);
-
-            // Save prediction to database
-            String predictionId = UUID.randomUUID().toString();
-            Prediction prediction = new Prediction();
-            prediction.setPredictionId(predictionId);
-            prediction.setModelId(modelId);
-            prediction.setPredictedSegment(predictedSegment);
-            prediction.setConfidence(confidence);
-            prediction.setInputData(objectMapper.writeValueAsString(request));
-            prediction.setProbabilities(objectMapper.writeValueAsString(probabilities));
-            prediction.setPredictedAt(LocalDateTime.now());
-
-            predictionRepository.save(prediction);
-
-            log.info("✅ Prediction completed: segment={}, confidence={:.2f}", predictedSegment, confidence);
-
-            return PredictionResponse.builder()
-                    .predictionId(predictionId)
-                    .predictedSegment(predictedSegment)
-                    .segmentName(segmentName)
-                    .segmentDescription(segmentDescription)
-                    .confidence(confidence)
-                    .probabilities(probabilities)
-                    .featureImportance(featureImportance)
-                    .predictedAt(LocalDateTime.now())
-                    .recommendation(recommendation)
-                    .build();
+    private PredictionRequest nextBatchRequest(JsonParser parser, boolean ndjson, boolean first) throws IOException {
+        // For NDJSON the first object's START_OBJECT was already read by openBatch
+        JsonToken token = ndjson && first ? parser.currentToken() : parser.nextToken();
+        if (token == null || token == JsonToken.END_ARRAY) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected a prediction request object but found " + token
+                    + " at line " + parser.currentLocation().getLineNr());
+        }
+        return webObjectMapper.readValue(parser, PredictionRequest.class);
+    }
 
-        } catch (Exception e) {
-            log.error("Error making prediction", e);
-            throw new RuntimeException("Failed to make prediction: " + e.getMessage(), e);
+    /**
+     * Segment details by segment id, keeping the most recently updated row when
+     * several clustering runs saved the same id.
+     */
+    private Map<Integer, Segment> latestSegments() {
+        Map<Integer, Segment> segments = new HashMap<>();
+        for (Segment segment : segmentRepository.findAll()) {
+            segments.merge(segment.getSegmentId(), segment, (a, b) ->
+                    a.getUpdatedAt() != null && (b.getUpdatedAt() == null || a.getUpdatedAt().isAfter(b.getUpdatedAt())) ? a : b);
         }
+        return segments;
     }
 
-    private Map<String, MinMaxValues> calculateNormalizationParams(List<Customer> customers, List<String> features) {
-        Map<String, MinMaxValues> params = new HashMap<>();
+    /**
+     * Scores one request against a model snapshot and builds both the response and
+     * the Prediction row to persist.
+     */
+    private ScoredPrediction score(PredictionRequest request, CachedModel model) throws JsonProcessingException {
+        CentroidModel centroidModel = model.model();
+
+        // Extract features from request
+        double[] inputFeatures = extractFeatures(request, model);
+
+        // Find nearest centroid on squared distances; roots are only needed for confidence and probabilities
+        double[] squaredDistances = new double[centroidModel.getSegmentCount()];
+        int nearest = centroidModel.nearest(inputFeatures, squaredDistances);
+        int predictedSegment = centroidModel.getSegmentId(nearest);
+        double minDistance = Math.sqrt(squaredDistances[nearest]);
+        Map<Integer, Double> distances = new HashMap<>();
+        for (int i = 0; i < squaredDistances.length; i++) {
+            distances.put(centroidModel.getSegmentId(i), Math.sqrt(squaredDistances[i]));
+        }
+
+        // Calculate confidence (inverse of distance)
+        double confidence = 1.0 / (1.0 + minDistance);
 
-        for (String feature : features) {
-            MinMaxValues minMax = new MinMaxValues();
-            minMax.min = Double.MAX_VALUE;
-            minMax.max = Double.MIN_VALUE;
+        // Calculate probabilities
+        Map<String, Object> probabilities = calculateProbabilities(distances);
 
-            for (Customer customer : customers) {
-                double value = extractFeatureValue(customer, feature);
-                minMax.min = Math.min(minMax.min, value);
-                minMax.max = Math.max(minMax.max, value);
-            }
+        // Get segment information
+        Optional<Segment> segmentOpt = model.segment(predictedSegment);
+        String segmentName = "Segment " + predictedSegment;
+        String segmentDescription = "Customer segment " + predictedSegment;
+        String recommendation = generateRecommendation(predictedSegment, segmentOpt.orElse(null));
 
-            params.put(feature, minMax);
-            log.debug("Feature '{}': min={}, max={}", feature, minMax.min, minMax.max);
+        if (segmentOpt.isPresent()) {
+            Segment segment = segmentOpt.get();
+            segmentName = segment.getSegmentName();
+            segmentDescription = segment.getDescription();
         }
 
-        return params;
+        // Calculate feature importance
+        Map<String, Double> featureImportance = calculateFeatureImportance(inputFeatures, centroidModel.getFeatures());
+
+        String predictionId = UUID.randomUUID().toString();
+        LocalDateTime predictedAt = LocalDateTime.now();
+        Prediction prediction = new Prediction();
+        prediction.setPredictionId(predictionId);
+        prediction.setModelId(model.modelId());
+        prediction.setPredictedSegment(predictedSegment);
+        prediction.setConfidence(confidence);
+        prediction.setInputData(objectMapper.writeValueAsString(request));
+        prediction.setProbabilities(objectMapper.writeValueAsString(probabilities));
+        prediction.setPredictedAt(predictedAt);
+
+        PredictionResponse response = PredictionResponse.builder()
+                .predictionId(predictionId)
+                .predictedSegment(predictedSegment)
+                .segmentName(segmentName)
+                .segmentDescription(segmentDescription)
+                .confidence(confidence)
+                .probabilities(probabilities)
+                .featureImportance(featureImportance)
+                .predictedAt(predictedAt)
+                .recommendation(recommendation)
+                .build();
+
+        return new ScoredPrediction(response, prediction);
     }
 
-    private double[] calculateCentroid(List<Customer> customers, List<String> features,
-                                       Map<String, MinMaxValues> normalizationParams) {
-        double[] centroid = new double[features.size()];
-
-        for (int i = 0; i < features.size(); i++) {
-            String feature = features.get(i);
-            MinMaxValues minMax = normalizationParams.get(feature);
+    /**
+     * Computes every segment's centroid in one pass over the labeled customers,
+     * streamed from the database with only the columns the features need. The raw
+     * feature values update the min/max ({@code mins}/{@code maxs} are filled in)
+     * and the per-segment sums together. Min/max scaling is linear, so the mean of
+     * the normalized rows is the normalized mean and no feature matrix is needed.
+     */
+    private Map<Integer, double[]> calculateCentroids(List<String> features, double[] mins, double[] maxs,
+                                                      long[] rowCount) {
+        // Feature j is the sum of the selected columns listed in featureColumns[j]
+        List<String> columns = FeatureMatrix.sourceColumns(features).stream()
+                .map(CustomerFeatureRepository::columnName)
+                .toList();
+        int[][] featureColumns = FeatureMatrix.columnIndexes(features);
+        int d = features.size();
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+
+        // Per segment: d feature sums followed by the customer count
+        Map<Integer, double[]> sums = new HashMap<>();
+        rowCount[0] = customerFeatureRepository.forEachLabeled(columns, mlConfig.getTrainingFetchSize(),
+                (segment, values) -> {
+                    double[] sum = sums.computeIfAbsent(segment, k -> new double[d + 1]);
+                    for (int j = 0; j < d; j++) {
+                        double value = 0;
+                        for (int column : featureColumns[j]) {
+                            value += values[column];
+                        }
+                        if (value < mins[j]) mins[j] = value;
+                        if (value > maxs[j]) maxs[j] = value;
+                        sum[j] += value;
+                    }
+                    sum[d]++;
+                });
+
+        for (int j = 0; j < d; j++) {
+            log.debug("Feature '{}': min={}, max={}", features.get(j), mins[j], maxs[j]);
+        }
 
-            double sum = 0.0;
-            for (Customer customer : customers) {
-                double value = extractFeatureValue(customer, feature);
-                double normalized = normalize(value, minMax.min, minMax.max);
-                sum += normalized;
+        Map<Integer, double[]> centroids = new HashMap<>();
+        for (Map.Entry<Integer, double[]> entry : sums.entrySet()) {
+            double[] sum = entry.getValue();
+            double count = sum[d];
+            double[] centroid = new double[d];
+            for (int j = 0; j < d; j++) {
+                centroid[j] = FeatureMatrix.scale(sum[j] / count, mins[j], maxs[j]);
             }
-
-            centroid[i] = sum / customers.size();
+            centroids.put(entry.getKey(), centroid);
+            log.info("Segment {} centroid calculated from {} customers", entry.getKey(), (long) count);
         }
 
-        return centroid;
+        return centroids;
     }
 
-    private double[] extractFeatures(PredictionRequest request, List<String> features,
-                                     Map<String, MinMaxValues> normalizationParams) {
-        double[] featureVector = new double[features.size()];
+    private double[] extractFeatures(PredictionRequest request, CachedModel model) {
+        ToDoubleFunction<PredictionRequest>[] extractors = model.extractors();
+        double[] featureVector = new double[extractors.length];
 
-        for (int i = 0; i < features.size(); i++) {
-            String feature = features.get(i);
-            double value = extractFeatureValueFromRequest(request, feature);
-            MinMaxValues minMax = normalizationParams.get(feature);
-            featureVector[i] = normalize(value, minMax.min, minMax.max);
+        for (int i = 0; i < extractors.length; i++) {
+            featureVector[i] = model.model().normalize(i, extractors[i].applyAsDouble(request));
         }
 
         return featureVector;
     }
 
     /**
-     * Extract feature value from Customer entity
+     * Resolves feature names to accessors once, so the per-row loops do no string work.
      */
-    private double extractFeatureValue(Customer customer, String featureName) {
-        return switch (featureName.toLowerCase()) {
-            case "income" -> customer.getIncome() != null ? customer.getIncome() : 0.0;
-            case "mntwines" -> customer.getMntWines() != null ? customer.getMntWines() : 0.0;
-            case "mntfruits" -> customer.getMntFruits() != null ? customer.getMntFruits() : 0.0;
-            case "mntmeatproducts" -> customer.getMntMeatProducts() != null ? customer.getMntMeatProducts() : 0.0;
-            case "mntfishproducts" -> customer.getMntFishProducts() != null ? customer.getMntFishProducts() : 0.0;
-            case "mntsweetproducts" -> customer.getMntSweetProducts() != null ? customer.getMntSweetProducts() : 0.0;
-            case "mntgoldprods" -> customer.getMntGoldProds() != null ? customer.getMntGoldProds() : 0.0;
-            case "numwebpurchases" -> customer.getNumWebPurchases() != null ? customer.getNumWebPurchases().doubleValue() : 0.0;
-            case "numcatalogpurchases" -> customer.getNumCatalogPurchases() != null ? customer.getNumCatalogPurchases().doubleValue() : 0.0;
-            case "numstorepurchases" -> customer.getNumStorePurchases() != null ? customer.getNumStorePurchases().doubleValue() : 0.0;
-            case "totalcampaigns" -> getTotalCampaigns(customer);
-            case "totalspending" -> getTotalSpending(customer);
-            default -> 0.0;
-        };
+    @SuppressWarnings("unchecked")
+    private static <T> ToDoubleFunction<T>[] compileExtractors(List<String> features,
+                                                              Function<String, ToDoubleFunction<T>> resolver) {
+        ToDoubleFunction<T>[] extractors = new ToDoubleFunction[features.size()];
+        for (int i = 0; i < extractors.length; i++) {
+            extractors[i] = resolver.apply(features.get(i));
+        }
+        return extractors;
     }
 
-    private double extractFeatureValueFromRequest(PredictionRequest request, String featureName) {
-        return switch (featureName.toLowerCase()) {
-            case "income" -> request.getIncome() != null ? request.getIncome() : 0.0;
-            case "mntwines" -> request.getMntWines() != null ? request.getMntWines() : 0.0;
-            case "mntfruits" -> request.getMntFruits() != null ? request.getMntFruits() : 0.0;
-            case "mntmeatproducts" -> request.getMntMeatProducts() != null ? request.getMntMeatProducts() : 0.0;
-            case "mntfishproducts" -> request.getMntFishProducts() != null ? request.getMntFishProducts() : 0.0;
-            case "mntsweetproducts" -> request.getMntSweetProducts() != null ? request.getMntSweetProducts() : 0.0;
-            case "mntgoldprods" -> request.getMntGoldProds() != null ? request.getMntGoldProds() : 0.0;
-            case "numwebpurchases" -> request.getNumWebPurchases() != null ? request.getNumWebPurchases().doubleValue() : 0.0;
-            case "numcatalogpurchases" -> request.getNumCatalogPurchases() != null ? request.getNumCatalogPurchases().doubleValue() : 0.0;
-            case "numstorepurchases" -> request.getNumStorePurchases() != null ? request.getNumStorePurchases().doubleValue() : 0.0;
-            case "totalcampaigns" -> getTotalCampaignsFromRequest(request);
-            case "totalspending" -> getTotalSpendingFromRequest(request);
-            default -> 0.0;
-        };
+    /**
+     * Getter of every customer column on PredictionRequest, whose fields are named
+     * after the columns. Resolved once, so a column added to a feature without a
+     * matching request field fails at startup.
+     */
+    private static Map<String, Method> requestColumns() {
+        Map<String, Method> getters = new HashMap<>();
+        for (String column : FeatureMatrix.customerColumns()) {
+            try {
+                getters.put(column, PredictionRequest.class.getMethod("get" + column));
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException("PredictionRequest has no field for customer column " + column, e);
+            }
+        }
+        return getters;
     }
 
-    private double normalize(double value, double min, double max) {
-        if (max == min) return 0.5;
-        return (value - min) / (max - min);
+    /**
+     * Accessor for a feature of a prediction request, summing the same columns as
+     * clustering and training do; unknown features are always 0
+     */
+    private static ToDoubleFunction<PredictionRequest> requestFeature(String featureName) {
+        Method[] getters = FeatureMatrix.columnsOf(featureName).stream()
+                .map(REQUEST_COLUMNS::get)
+                .toArray(Method[]::new);
+        return r -> {
+            double sum = 0.0;
+            for (Method getter : getters) {
+                sum += value(requestValue(getter, r));
+            }
+            return sum;
+        };
     }
 
-    private double euclideanDistance(double[] a, double[] b) {
-        double sum = 0.0;
-        for (int i = 0; i < a.length; i++) {
-            double diff = a[i] - b[i];
-            sum += diff * diff;
+    private static Number requestValue(Method getter, PredictionRequest request) {
+        try {
+            return (Number) getter.invoke(request);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to read " + getter.getName() + " of the prediction request", e);
         }
-        return Math.sqrt(sum);
+    }
+
+    private static double value(Number number) {
+        return number != null ? number.doubleValue() : 0.0;
     }
 
     private Map<String, Object> calculateProbabilities(Map<Integer, Double> distances) {
@@ -395,63 +568,69 @@ public class PredictionModelService {
         return "Continue regular marketing campaigns and monitor engagement.";
     }
 
-    private double getTotalCampaigns(Customer c) {
-        return (c.getAcceptedCmp1() != null ? c.getAcceptedCmp1() : 0) +
-                (c.getAcceptedCmp2() != null ? c.getAcceptedCmp2() : 0) +
-                (c.getAcceptedCmp3() != null ? c.getAcceptedCmp3() : 0) +
-                (c.getAcceptedCmp4() != null ? c.getAcceptedCmp4() : 0) +
-                (c.getAcceptedCmp5() != null ? c.getAcceptedCmp5() : 0);
+    private List<String> getDefaultFeatures() {
+        return FeatureMatrix.DEFAULT_FEATURES;
     }
 
-    private double getTotalSpending(Customer c) {
-        return (c.getMntWines() != null ? c.getMntWines() : 0) +
-                (c.getMntFruits() != null ? c.getMntFruits() : 0) +
-                (c.getMntMeatProducts() != null ? c.getMntMeatProducts() : 0) +
-                (c.getMntFishProducts() != null ? c.getMntFishProducts() : 0) +
-                (c.getMntSweetProducts() != null ? c.getMntSweetProducts() : 0) +
-                (c.getMntGoldProds() != null ? c.getMntGoldProds() : 0);
+    /**
+     * The cached active model, for callers that score customers in bulk.
+     */
+    public ModelSnapshot getActiveModelSnapshot() {
+        CachedModel cached = getActiveModel();
+        return new ModelSnapshot(cached.modelId(), cached.model());
     }
 
-    private double getTotalCampaignsFromRequest(PredictionRequest r) {
-        return (r.getAcceptedCmp1() != null ? r.getAcceptedCmp1() : 0) +
-                (r.getAcceptedCmp2() != null ? r.getAcceptedCmp2() : 0) +
-                (r.getAcceptedCmp3() != null ? r.getAcceptedCmp3() : 0) +
-                (r.getAcceptedCmp4() != null ? r.getAcceptedCmp4() : 0) +
-                (r.getAcceptedCmp5() != null ? r.getAcceptedCmp5() : 0);
-    }
+    /**
+     * Returns the cached active model. The DB is asked which model is active at most
+     * once per ml.model-cache-check-interval-ms; the model file is only read again when
+     * that answer changes, e.g. after another node trained a new model. While one
+     * thread re-checks, others keep using the current model.
+     */
+    private CachedModel getActiveModel() {
+        CachedModel cached = activeModel.get();
+        if (cached != null && System.currentTimeMillis() - lastModelCheck < mlConfig.getModelCacheCheckIntervalMs()) {
+            return cached;
+        }
 
-    private double getTotalSpendingFromRequest(PredictionRequest r) {
-        return (r.getMntWines() != null ? r.getMntWines() : 0) +
-                (r.getMntFruits() != null ? r.getMntFruits() : 0) +
-                (r.getMntMeatProducts() != null ? r.getMntMeatProducts() : 0) +
-                (r.getMntFishProducts() != null ? r.getMntFishProducts() : 0) +
-                (r.getMntSweetProducts() != null ? r.getMntSweetProducts() : 0) +
-                (r.getMntGoldProds() != null ? r.getMntGoldProds() : 0);
-    }
+        if (cached != null) {
+            if (!modelRefreshLock.tryLock()) {
+                return cached;
+            }
+        } else {
+            modelRefreshLock.lock();
+        }
 
-    private List<String> getDefaultFeatures() {
-        return Arrays.asList(
-                "Income",
-                "MntWines",
-                "MntMeatProducts",
-                "MntFishProducts",
-                "NumWebPurchases",
-                "NumCatalogPurchases",
-                "NumStorePurchases",
-                "TotalCampaigns"
-        );
+        try {
+            cached = activeModel.get();
+            if (cached != null && System.currentTimeMillis() - lastModelCheck < mlConfig.getModelCacheCheckIntervalMs()) {
+                return cached;
+            }
+
+            MLModel mlModel = mlModelRepository.findFirstByIsActiveTrueOrderByTrainedAtDesc()
+                    .orElseThrow(() -> new IllegalStateException("No active model found. Please train a model first."));
+
+            if (cached == null || !cached.modelId().equals(mlModel.getModelId())) {
+                cached = new CachedModel(mlModel.getModelId(), loadModel(mlModel.getModelPath()), latestSegments());
+                log.info("Loaded active prediction model {} into cache", mlModel.getModelId());
+            } else {
+                // Segment details change with every clustering run, not only with the model
+                cached = cached.withSegments(latestSegments());
+            }
+            activeModel.set(cached);
+            lastModelCheck = System.currentTimeMillis();
+            return cached;
+        } finally {
+            modelRefreshLock.unlock();
+        }
     }
 
-    private String saveModel(PredictionModelData modelData, String modelId) {
+    private String saveModel(CentroidModel model, String modelId) {
         try {
             String modelDir = mlConfig.getModelDir();
             new File(modelDir).mkdirs();
 
             String modelPath = modelDir + modelId + ".model";
-
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(modelPath))) {
-                oos.writeObject(modelData);
-            }
+            model.write(Path.of(modelPath));
 
             log.info("Model saved to: {}", modelPath);
             return modelPath;
@@ -462,16 +641,76 @@ public class PredictionModelService {
         }
     }
 
-    private PredictionModelData loadModel(String modelPath) {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(modelPath))) {
-            return (PredictionModelData) ois.readObject();
+    private CentroidModel loadModel(String modelPath) {
+        try {
+            Path path = Path.of(modelPath);
+            if (CentroidModel.isCentroidModelFile(path)) {
+                return CentroidModel.read(path);
+            }
+            return loadLegacyModel(path);
         } catch (Exception e) {
             log.error("Error loading model from: {}", modelPath, e);
             throw new RuntimeException("Failed to load model", e);
         }
     }
 
+    /**
+     * Reads a model saved with Java serialization before the binary format existed.
+     */
+    private CentroidModel loadLegacyModel(Path path) throws IOException, ClassNotFoundException {
+        PredictionModelData legacy;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            legacy = (PredictionModelData) ois.readObject();
+        }
+        double[] mins = new double[legacy.features.size()];
+        double[] maxs = new double[legacy.features.size()];
+        for (int j = 0; j < mins.length; j++) {
+            MinMaxValues minMax = legacy.normalizationParams.get(legacy.features.get(j));
+            mins[j] = minMax.min;
+            maxs[j] = minMax.max;
+        }
+        int[] segmentIds = legacy.centroids.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        double[][] centroids = Arrays.stream(segmentIds).mapToObj(legacy.centroids::get).toArray(double[][]::new);
+        log.info("Loaded legacy serialized model from: {}", path);
+        return CentroidModel.of(legacy.features, mins, maxs, segmentIds, centroids);
+    }
+
+    public record ModelSnapshot(String modelId, CentroidModel model) {
+    }
+
+    /**
+     * Active model snapshot, with the segment details its predictions are labeled
+     * with; both are replaced together on the periodic model check.
+     */
+    private record CachedModel(String modelId, CentroidModel model, ToDoubleFunction<PredictionRequest>[] extractors,
+                               Map<Integer, Segment> segments) {
+
+        CachedModel(String modelId, CentroidModel model, Map<Integer, Segment> segments) {
+            this(modelId, model, compileExtractors(model.getFeatures(), PredictionModelService::requestFeature),
+                    segments);
+        }
+
+        CachedModel withSegments(Map<Integer, Segment> segments) {
+            return new CachedModel(modelId, model, extractors, segments);
+        }
+
+        Optional<Segment> segment(int segmentId) {
+            return Optional.ofNullable(segments.get(segmentId));
+        }
+    }
+
+    private record ScoredPrediction(PredictionResponse response, Prediction prediction, String error) {
+
+        ScoredPrediction(PredictionResponse response, Prediction prediction) {
+            this(response, prediction, null);
+        }
+
+        static ScoredPrediction failed(String error) {
+            return new ScoredPrediction(null, null, error);
+        }
+    }
 
+    // Java-serialized model layout, kept only so models saved before CentroidModel still load
     private static class PredictionModelData implements Serializable {
         private static final long serialVersionUID = 1L;
         Map<Integer, double[]> centroids;
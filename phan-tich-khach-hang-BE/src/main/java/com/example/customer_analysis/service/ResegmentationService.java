@@ -0,0 +1,332 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import com.example.customer_analysis.dto.response.ResegmentationJobDTO;
+import com.example.customer_analysis.entity.ResegmentationJob;
+import com.example.customer_analysis.repository.CustomerBatchRepository;
+import com.example.customer_analysis.repository.CustomerFeatureRepository;
+import com.example.customer_analysis.repository.CustomerFeatureRepository.FeaturePage;
+import com.example.customer_analysis.repository.CustomerRepository;
+import com.example.customer_analysis.repository.ResegmentationJobRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+/**
+ * Re-assigns every customer's segment with the active prediction model in the
+ * background. Customers are read in keyset-paginated chunks, scored in parallel
+ * and written back with batched UPDATE ... WHERE id IN statements. Each chunk
+ * commits together with the job's last customer id, so a failed or interrupted
+ * job resumes right after the last committed chunk. The instance running a job
+ * owns it in the database and refreshes its heartbeat every
+ * ml.resegment-heartbeat-interval-ms; only a job whose heartbeat went stale can
+ * be failed or taken over by another instance.
+ */
+@Service
+@Slf4j
+public class ResegmentationService {
+
+    private static final String RUNNING = "RUNNING";
+    private static final String COMPLETED = "COMPLETED";
+    private static final String FAILED = "FAILED";
+    private static final long PROGRESS_LOG_INTERVAL_MS = 10_000;
+
+    private final PredictionModelService predictionModelService;
+    private final CustomerFeatureRepository customerFeatureRepository;
+    private final CustomerBatchRepository customerBatchRepository;
+    private final CustomerRepository customerRepository;
+    private final ResegmentationJobRepository jobRepository;
+    private final MLConfig mlConfig;
+    private final DashboardService dashboardService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService runner = Executors.newSingleThreadExecutor(r -> new Thread(r, "resegmentation"));
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "resegmentation-heartbeat"));
+    private final ForkJoinPool scoringPool;
+    // Owner recorded on the jobs this instance runs
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicBoolean jobRunning = new AtomicBoolean();
+
+    public ResegmentationService(PredictionModelService predictionModelService,
+                                 CustomerFeatureRepository customerFeatureRepository,
+                                 CustomerBatchRepository customerBatchRepository,
+                                 CustomerRepository customerRepository,
+                                 ResegmentationJobRepository jobRepository,
+                                 MLConfig mlConfig,
+                                 DashboardService dashboardService,
+                                 PlatformTransactionManager transactionManager) {
+        this.predictionModelService = predictionModelService;
+        this.customerFeatureRepository = customerFeatureRepository;
+        this.customerBatchRepository = customerBatchRepository;
+        this.customerRepository = customerRepository;
+        this.jobRepository = jobRepository;
+        this.mlConfig = mlConfig;
+        this.dashboardService = dashboardService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.scoringPool = new ForkJoinPool(mlConfig.getEffectiveClusteringThreads());
+    }
+
+    /**
+     * Jobs still marked running whose owner stopped sending heartbeats belonged
+     * to a process that is gone; mark them failed so they can be resumed. Jobs
+     * running on other live instances are left alone.
+     */
+    @PostConstruct
+    public void markInterruptedJobs() {
+        LocalDateTime now = LocalDateTime.now();
+        int failed = jobRepository.failStale(staleBefore(now), now,
+                "Interrupted by a shutdown; resume the job to continue");
+        if (failed > 0) {
+            log.warn("Marked {} interrupted re-segmentation jobs as failed", failed);
+        }
+    }
+
+    public ResegmentationJobDTO startJob() {
+        PredictionModelService.ModelSnapshot model = predictionModelService.getActiveModelSnapshot();
+        claimRunner();
+        try {
+            ResegmentationJob job = new ResegmentationJob();
+            job.setJobId(UUID.randomUUID().toString());
+            job.setModelId(model.modelId());
+            job.setStatus(RUNNING);
+            job.setTotalCustomers(customerRepository.count());
+            job.setStartedAt(LocalDateTime.now());
+            job.setUpdatedAt(job.getStartedAt());
+            job.setOwner(instanceId);
+            job.setHeartbeatAt(job.getStartedAt());
+            job = jobRepository.save(job);
+
+            submit(job, model);
+            log.info("Started re-segmentation job {} with model {}", job.getJobId(), model.modelId());
+            return toDTO(job);
+        } catch (RuntimeException e) {
+            jobRunning.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Continues a failed job, or a running one whose owner stopped sending
+     * heartbeats, after its last committed customer id. The active model must
+     * still be the one the job started with.
+     */
+    public ResegmentationJobDTO resumeJob(String jobId) {
+        ResegmentationJob job = findJob(jobId);
+        if (COMPLETED.equals(job.getStatus())) {
+            throw new IllegalStateException("Only failed jobs can be resumed; job " + jobId + " is " + job.getStatus());
+        }
+        PredictionModelService.ModelSnapshot model = predictionModelService.getActiveModelSnapshot();
+        if (!model.modelId().equals(job.getModelId())) {
+            throw new IllegalStateException("The active model changed since job " + jobId
+                    + " started; start a new job instead");
+        }
+
+        claimRunner();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            if (jobRepository.claim(jobId, instanceId, now, staleBefore(now)) == 0) {
+                throw new IllegalStateException("Re-segmentation job " + jobId + " is still running");
+            }
+            job = findJob(jobId);
+
+            submit(job, model);
+            log.info("Resumed re-segmentation job {} after customer id {}", jobId, job.getLastCustomerId());
+            return toDTO(job);
+        } catch (RuntimeException e) {
+            jobRunning.set(false);
+            throw e;
+        }
+    }
+
+    public ResegmentationJobDTO getJob(String jobId) {
+        return toDTO(findJob(jobId));
+    }
+
+    private ResegmentationJob findJob(String jobId) {
+        return jobRepository.findByJobId(jobId)
+                .orElseThrow(() -> new IllegalArgumentException("Re-segmentation job not found: " + jobId));
+    }
+
+    private void claimRunner() {
+        if (!jobRunning.compareAndSet(false, true)) {
+            throw new IllegalStateException("A re-segmentation job is already running");
+        }
+    }
+
+    private void submit(ResegmentationJob job, PredictionModelService.ModelSnapshot model) {
+        runner.execute(() -> {
+            long interval = Math.max(1, mlConfig.getResegmentHeartbeatIntervalMs());
+            ScheduledFuture<?> heartbeat = heartbeats.scheduleWithFixedDelay(
+                    () -> beat(job.getJobId()), interval, interval, TimeUnit.MILLISECONDS);
+            try {
+                run(job, model.model());
+            } finally {
+                heartbeat.cancel(false);
+                jobRunning.set(false);
+            }
+        });
+    }
+
+    private void beat(String jobId) {
+        try {
+            if (jobRepository.heartbeat(jobId, instanceId, LocalDateTime.now()) == 0) {
+                log.warn("Re-segmentation job {} is no longer owned by this instance", jobId);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh the heartbeat of re-segmentation job {}", jobId, e);
+        }
+    }
+
+    private LocalDateTime staleBefore(LocalDateTime now) {
+        return now.minus(mlConfig.getResegmentStaleAfterMs(), ChronoUnit.MILLIS);
+    }
+
+    /**
+     * Saves the job only while this instance still owns it, in the current
+     * transaction; the heartbeat update locks the row until the save commits.
+     */
+    private boolean saveIfOwned(ResegmentationJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        if (jobRepository.heartbeat(job.getJobId(), instanceId, now) == 0) {
+            return false;
+        }
+        job.setHeartbeatAt(now);
+        jobRepository.save(job);
+        return true;
+    }
+
+    private void run(ResegmentationJob job, CentroidModel model) {
+        List<String> features = model.getFeatures();
+        List<String> columns = FeatureMatrix.sourceColumns(features).stream()
+                .map(CustomerFeatureRepository::columnName)
+                .toList();
+        int[][] featureColumns = FeatureMatrix.columnIndexes(features);
+        int chunkSize = Math.max(1, mlConfig.getResegmentChunkSize());
+        long processedAtStart = job.getProcessedCustomers();
+        long runStart = System.currentTimeMillis();
+        long runningTimeAtStart = job.getRunningTimeMs();
+        long lastLog = runStart;
+
+        try {
+            while (true) {
+                FeaturePage page = customerFeatureRepository.findPageAfter(columns, job.getLastCustomerId(), chunkSize);
+                if (page.size() == 0) {
+                    break;
+                }
+                int[] segments = score(model, page, featureColumns);
+
+                job.setLastCustomerId(page.ids()[page.size() - 1]);
+                job.setProcessedCustomers(job.getProcessedCustomers() + page.size());
+                job.setUpdatedAt(LocalDateTime.now());
+                job.setRunningTimeMs(runningTimeAtStart + System.currentTimeMillis() - runStart);
+                // The updates and the new resume point commit together
+                ResegmentationJob current = job;
+                transactionTemplate.executeWithoutResult(status -> {
+                    customerBatchRepository.updateSegments(page.ids(), segments);
+                    if (!saveIfOwned(current)) {
+                        throw new IllegalStateException("Job was taken over by another instance");
+                    }
+                });
+
+                long now = System.currentTimeMillis();
+                if (now - lastLog >= PROGRESS_LOG_INTERVAL_MS) {
+                    lastLog = now;
+                    log.info("Re-segmentation job {}: {}/{} customers, {} customers/s", job.getJobId(),
+                            job.getProcessedCustomers(), job.getTotalCustomers(),
+                            Math.round((job.getProcessedCustomers() - processedAtStart) * 1000.0 / (now - runStart)));
+                }
+            }
+
+            job.setStatus(COMPLETED);
+            job.setFinishedAt(LocalDateTime.now());
+            log.info("Re-segmentation job {} completed: {} customers in {}ms", job.getJobId(),
+                    job.getProcessedCustomers(), job.getRunningTimeMs());
+        } catch (Exception e) {
+            log.error("Re-segmentation job {} failed after customer id {}", job.getJobId(), job.getLastCustomerId(), e);
+            // Reload so the saved progress is the last committed one, not the failed chunk's
+            job = jobRepository.findByJobId(job.getJobId()).orElse(job);
+            job.setStatus(FAILED);
+            job.setError(e.getMessage());
+        }
+        job.setUpdatedAt(LocalDateTime.now());
+        ResegmentationJob finished = job;
+        if (!Boolean.TRUE.equals(transactionTemplate.execute(status -> saveIfOwned(finished)))) {
+            log.warn("Re-segmentation job {} was taken over by another instance; its final state is not saved",
+                    job.getJobId());
+        }
+
+        // Even a failed job has committed chunks the dashboard should show
+        if (job.getProcessedCustomers() > processedAtStart) {
+            dashboardService.refresh();
+        }
+    }
+
+    /**
+     * Nearest segment of every customer in the page, scored in parallel.
+     */
+    private int[] score(CentroidModel model, FeaturePage page, int[][] featureColumns) throws Exception {
+        int[] segments = new int[page.size()];
+        int d = featureColumns.length;
+        try {
+            scoringPool.submit(() -> IntStream.range(0, page.size()).parallel().forEach(i -> {
+                double[] values = page.values()[i];
+                double[] point = new double[d];
+                for (int j = 0; j < d; j++) {
+                    double value = 0;
+                    for (int column : featureColumns[j]) {
+                        value += values[column];
+                    }
+                    point[j] = model.normalize(j, value);
+                }
+                segments[i] = model.getSegmentId(model.nearest(point, new double[model.getSegmentCount()]));
+            })).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+        return segments;
+    }
+
+    private ResegmentationJobDTO toDTO(ResegmentationJob job) {
+        Long total = job.getTotalCustomers();
+        long processed = job.getProcessedCustomers();
+        long runningTimeMs = job.getRunningTimeMs();
+        return ResegmentationJobDTO.builder()
+                .jobId(job.getJobId())
+                .modelId(job.getModelId())
+                .status(job.getStatus())
+                .processedCustomers(processed)
+                .totalCustomers(total)
+                .progressPercent(total != null && total > 0 ? Math.min(100.0, processed * 100.0 / total) : null)
+                .customersPerSecond(runningTimeMs > 0 ? processed * 1000.0 / runningTimeMs : null)
+                .lastCustomerId(job.getLastCustomerId())
+                .startedAt(job.getStartedAt())
+                .updatedAt(job.getUpdatedAt())
+                .finishedAt(job.getFinishedAt())
+                .error(job.getError())
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        runner.shutdownNow();
+        heartbeats.shutdownNow();
+        scoringPool.shutdown();
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.customer_analysis.service;
+
+/**
+ * Plain-loop {@link NearestCentroid}, used when the Vector API module is not loaded.
+ */
+final class ScalarNearestCentroid implements NearestCentroid {
+
+    @Override
+    public int nearest(double[] centroids, double[] point, double[] squaredDistances) {
+        int d = point.length;
+        int k = centroids.length / d;
+        int best = 0;
+        for (int c = 0; c < k; c++) {
+            int offset = c * d;
+            double sum = 0;
+            for (int j = 0; j < d; j++) {
+                double diff = point[j] - centroids[offset + j];
+                sum += diff * diff;
+            }
+            squaredDistances[c] = sum;
+            if (sum < squaredDistances[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+}
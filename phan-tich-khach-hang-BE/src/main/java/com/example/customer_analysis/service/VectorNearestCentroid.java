@@ -0,0 +1,43 @@
+package com.example.customer_analysis.service;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * {@link NearestCentroid} using the incubating Vector API: each centroid row is
+ * processed in SIMD lanes of the platform's preferred width, with a scalar tail.
+ * Only loaded through {@link NearestCentroid#get()} after the module was found.
+ */
+final class VectorNearestCentroid implements NearestCentroid {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public int nearest(double[] centroids, double[] point, double[] squaredDistances) {
+        int d = point.length;
+        int k = centroids.length / d;
+        int upper = SPECIES.loopBound(d);
+        int best = 0;
+        for (int c = 0; c < k; c++) {
+            int offset = c * d;
+            DoubleVector acc = DoubleVector.zero(SPECIES);
+            int j = 0;
+            for (; j < upper; j += SPECIES.length()) {
+                DoubleVector diff = DoubleVector.fromArray(SPECIES, point, j)
+                        .sub(DoubleVector.fromArray(SPECIES, centroids, offset + j));
+                acc = diff.fma(diff, acc);
+            }
+            double sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; j < d; j++) {
+                double diff = point[j] - centroids[offset + j];
+                sum += diff * diff;
+            }
+            squaredDistances[c] = sum;
+            if (sum < squaredDistances[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.FileConfig;
+import com.example.customer_analysis.dto.response.UploadResponseDTO;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileServiceParallelIngestTests {
+
+    private static final int ROWS = 3000;
+
+    @TempDir
+    java.nio.file.Path tempDir;
+
+    @Test
+    void parallelAndSequentialIngestWriteIdenticalParquet() throws IOException {
+        byte[] csv = trickyCsv().getBytes(StandardCharsets.UTF_8);
+
+        List<String> sequential = ingest(csv, "sequential", false);
+        List<String> parallel = ingest(csv, "parallel", true);
+
+        assertEquals(ROWS, sequential.size());
+        assertEquals(sequential, parallel);
+    }
+
+    private List<String> ingest(byte[] csv, String name, boolean parallel) throws IOException {
+        FileConfig config = new FileConfig();
+        config.setUploadDir(tempDir.resolve(name + "-uploads") + "/");
+        config.setParquetDir(tempDir.resolve(name + "-parquet") + "/");
+        config.setParallelIngest(parallel);
+        config.setParallelThresholdBytes(0);
+        config.setIngestThreads(8);
+
+        FileService service = new FileService();
+        ReflectionTestUtils.setField(service, "columnMapperService", new ColumnMapperService());
+        ReflectionTestUtils.setField(service, "fileConfig", config);
+
+        UploadResponseDTO response = service.processFile(
+                new MockMultipartFile("file", "customers.csv", "text/csv", csv));
+        assertEquals(ROWS, response.getTotalRecords());
+        return readRows(response.getParquetPath());
+    }
+
+    private static List<String> readRows(String parquetPath) throws IOException {
+        List<String> rows = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader
+                .builder(new GroupReadSupport(), new Path(parquetPath))
+                .withConf(new Configuration())
+                .build()) {
+            Group group;
+            while ((group = reader.read()) != null) {
+                rows.add(group.toString());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Rows mixing quoted fields with embedded newlines and delimiters, escaped
+     * {@code ""} quotes, and stray quotes inside unquoted fields, so that any
+     * quote-counting shortcut lands chunk boundaries mid-record.
+     */
+    private static String trickyCsv() {
+        StringBuilder csv = new StringBuilder("ID,Education,Marital_Status,Income,MntWines,NumWebPurchases\n");
+        for (int i = 0; i < ROWS; i++) {
+            String education = switch (i % 5) {
+                case 0 -> "\"Grad\nuation, class of " + (1990 + i % 30) + "\"";
+                case 1 -> "\"He said \"\"PhD\"\"\nthen left\"";
+                case 2 -> "5\" screen";
+                case 3 -> "\"\"\"quoted\"\" start\"";
+                default -> "Basic";
+            };
+            String marital = i % 7 == 0 ? "Single\"" : "\"Married\r\nTogether\"";
+            csv.append(i).append(',')
+                    .append(education).append(',')
+                    .append(marital).append(',')
+                    .append(30000 + i).append(',')
+                    .append(i % 500).append(',')
+                    .append(i % 11).append('\n');
+        }
+        return csv.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import smile.math.MathEx;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class KMeansEngineTests {
+
+    private final KMeansEngine engine = new KMeansEngine(engineConfig());
+
+    @AfterEach
+    void tearDown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void autoKPicksTheNumberOfWellSeparatedBlobs() {
+        MathEx.setSeed(42);
+        double[][] data = blobs(new Random(42), new double[][]{{0.1, 0.1}, {0.1, 0.9}, {0.9, 0.1}, {0.9, 0.9}}, 500);
+
+        KMeansEngine.AutoKResult result = engine.fitAutoK(data, new KMeansEngine.Options(2, 100, 1e-4, 4), 2, 7, 1000);
+
+        assertEquals(4, result.best().k());
+        assertEquals(6, result.scores().size());
+    }
+
+    @Test
+    void autoKPicksTwoForTwoBlobs() {
+        MathEx.setSeed(7);
+        double[][] data = blobs(new Random(7), new double[][]{{0.2, 0.5, 0.5}, {0.8, 0.5, 0.5}}, 800);
+
+        KMeansEngine.AutoKResult result = engine.fitAutoK(data, new KMeansEngine.Options(2, 100, 1e-4, 4), 2, 6, 1000);
+
+        assertEquals(2, result.best().k());
+    }
+
+    private static double[][] blobs(Random random, double[][] centers, int perBlob) {
+        double[][] data = new double[centers.length * perBlob][];
+        for (int i = 0; i < data.length; i++) {
+            double[] center = centers[i % centers.length];
+            data[i] = new double[center.length];
+            for (int j = 0; j < center.length; j++) {
+                data[i][j] = center[j] + random.nextGaussian() * 0.03;
+            }
+        }
+        return data;
+    }
+
+    private static MLConfig engineConfig() {
+        MLConfig config = new MLConfig();
+        config.setClusteringThreads(2);
+        return config;
+    }
+}
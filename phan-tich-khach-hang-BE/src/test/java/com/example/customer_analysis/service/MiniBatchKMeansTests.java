@@ -0,0 +1,148 @@
+package com.example.customer_analysis.service;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.example.ExampleParquetWriter;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MiniBatchKMeansTests {
+
+    private static final List<String> FEATURES = List.of("Income", "MntWines");
+    private static final double[][] CENTERS = {{10, 10}, {50, 90}, {90, 30}};
+    private static final int ROWS_PER_CLUSTER = 10_000;
+
+    @TempDir
+    java.nio.file.Path tempDir;
+
+    @Test
+    void convergesOnAFileSortedByCluster() throws IOException {
+        Random random = new Random(42);
+        double[][] points = blobs(random);
+        String path = write(points, "sorted.parquet");
+        assertTrue(rowGroups(path) >= 10, "the file should span many row groups");
+
+        MiniBatchKMeans model = MiniBatchKMeans.fit(path, FEATURES, new KMeansEngine.Options(3, 0, 1e-6, 4),
+                256, 30, 4096, random);
+
+        double[][] scaled = scale(points, model.getMins(), model.getMaxs());
+        double[][] trueCenters = scale(CENTERS, model.getMins(), model.getMaxs());
+        for (double[] center : trueCenters) {
+            assertTrue(Math.sqrt(nearestSquaredDistance(center, model.getCentroids())) < 0.02,
+                    "every true center should have a learned center next to it");
+        }
+        double inertia = inertia(scaled, model.getCentroids());
+        double optimal = inertia(scaled, trueCenters);
+        assertTrue(inertia < optimal * 1.02, "inertia " + inertia + " should be close to " + optimal);
+    }
+
+    @Test
+    void reportedInertiaAndScalingMatchBruteForce() throws IOException {
+        Random random = new Random(7);
+        double[][] points = blobs(random);
+        for (int i = points.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            double[] tmp = points[i];
+            points[i] = points[j];
+            points[j] = tmp;
+        }
+        String path = write(points, "shuffled.parquet");
+
+        MiniBatchKMeans model = MiniBatchKMeans.fit(path, FEATURES, new KMeansEngine.Options(3, 0, 1e-6, 4),
+                256, 30, 4096, random);
+
+        for (int j = 0; j < FEATURES.size(); j++) {
+            int feature = j;
+            assertEquals(Arrays.stream(points).mapToDouble(p -> p[feature]).min().orElseThrow(), model.getMins()[j]);
+            assertEquals(Arrays.stream(points).mapToDouble(p -> p[feature]).max().orElseThrow(), model.getMaxs()[j]);
+        }
+        double[][] scaled = scale(points, model.getMins(), model.getMaxs());
+        double bruteForce = inertia(scaled, model.getCentroids()) / points.length;
+        double reported = model.getInertiaHistory().get(model.getInertiaHistory().size() - 1);
+        // The reported inertia is measured at assignment time during the last epoch
+        assertEquals(bruteForce, reported, bruteForce * 0.05);
+        double optimal = inertia(scaled, scale(CENTERS, model.getMins(), model.getMaxs())) / points.length;
+        assertTrue(bruteForce < optimal * 1.02, "inertia " + bruteForce + " should be close to " + optimal);
+        assertEquals(points.length, model.getRowCount());
+    }
+
+    private static double[][] blobs(Random random) {
+        double[][] points = new double[CENTERS.length * ROWS_PER_CLUSTER][];
+        for (int i = 0; i < points.length; i++) {
+            double[] center = CENTERS[i / ROWS_PER_CLUSTER];
+            points[i] = new double[]{center[0] + random.nextGaussian() * 3, center[1] + random.nextGaussian() * 3};
+        }
+        return points;
+    }
+
+    private String write(double[][] points, String fileName) throws IOException {
+        MessageType schema = MessageTypeParser.parseMessageType(
+                "message customers { required double Income; required double MntWines; }");
+        Path path = new Path(tempDir.resolve(fileName).toString());
+        SimpleGroupFactory groups = new SimpleGroupFactory(schema);
+        try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(path)
+                .withType(schema)
+                .withRowGroupSize(16 * 1024L)
+                .withPageSize(4 * 1024)
+                .build()) {
+            for (double[] point : points) {
+                writer.write(groups.newGroup().append("Income", point[0]).append("MntWines", point[1]));
+            }
+        }
+        return path.toString();
+    }
+
+    private static int rowGroups(String path) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(
+                HadoopInputFile.fromPath(new Path(path), new Configuration()))) {
+            return reader.getRowGroups().size();
+        }
+    }
+
+    private static double[][] scale(double[][] points, double[] mins, double[] maxs) {
+        double[][] scaled = new double[points.length][];
+        for (int i = 0; i < points.length; i++) {
+            scaled[i] = new double[points[i].length];
+            for (int j = 0; j < points[i].length; j++) {
+                scaled[i][j] = FeatureMatrix.scale(points[i][j], mins[j], maxs[j]);
+            }
+        }
+        return scaled;
+    }
+
+    private static double inertia(double[][] points, double[][] centers) {
+        double sum = 0;
+        for (double[] point : points) {
+            sum += nearestSquaredDistance(point, centers);
+        }
+        return sum;
+    }
+
+    private static double nearestSquaredDistance(double[] point, double[][] centers) {
+        double best = Double.MAX_VALUE;
+        for (double[] center : centers) {
+            double distance = 0;
+            for (int j = 0; j < point.length; j++) {
+                double diff = point[j] - center[j];
+                distance += diff * diff;
+            }
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import com.example.customer_analysis.entity.Prediction;
+import com.example.customer_analysis.repository.PredictionBatchRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class PredictionAuditLogReplayTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final PredictionBatchRepository repository = mock(PredictionBatchRepository.class);
+    private final List<String> saved = new ArrayList<>();
+    private Path spillFile;
+    private PredictionAuditLog auditLog;
+
+    @BeforeEach
+    void setUp() {
+        spillFile = tempDir.resolve("prediction-spill.ndjson");
+        MLConfig mlConfig = new MLConfig();
+        mlConfig.setAuditSpillFile(spillFile.toString());
+        mlConfig.setPredictionBatchSize(3);
+        auditLog = new PredictionAuditLog(repository, mlConfig, objectMapper);
+    }
+
+    @Test
+    void duplicateRowsAreSkippedAndRejectedRowsDeadLettered() throws IOException {
+        List<String> lines = spill("p0", "p1", "p2", "p3", "p4");
+        failInserts(Set.of("p1"), Set.of("p3"), Set.of());
+
+        replay();
+
+        assertEquals(List.of("p0", "p2", "p4"), saved);
+        assertEquals(List.of(lines.get(3)), Files.readAllLines(deadLetterFile()));
+        assertEquals(1, auditLog.getDeadLetterCount());
+        assertFalse(Files.exists(replayFile()));
+    }
+
+    @Test
+    void databaseOutageKeepsUnsavedRowsForTheNextReplay() throws IOException {
+        List<String> lines = spill("p0", "p1", "p2", "p3", "p4");
+        failInserts(Set.of(), Set.of(), Set.of("p3"));
+
+        replay();
+
+        assertEquals(List.of("p0", "p1", "p2"), saved);
+        assertEquals(lines.subList(3, 5), Files.readAllLines(replayFile()));
+        assertEquals(0, auditLog.getDeadLetterCount());
+        assertFalse(Files.exists(deadLetterFile()));
+    }
+
+    private void replay() {
+        ReflectionTestUtils.invokeMethod(auditLog, "replaySpilled");
+    }
+
+    /**
+     * Fails any insert containing one of the given ids the way the database would:
+     * an existing prediction id, a row with invalid data, or a lost connection.
+     */
+    private void failInserts(Set<String> duplicates, Set<String> rejected, Set<String> unavailable) {
+        doAnswer(invocation -> {
+            List<Prediction> predictions = invocation.getArgument(0);
+            for (Prediction prediction : predictions) {
+                String id = prediction.getPredictionId();
+                if (duplicates.contains(id)) {
+                    throw new DuplicateKeyException("duplicate " + id);
+                }
+                if (rejected.contains(id)) {
+                    throw new DataIntegrityViolationException("invalid " + id);
+                }
+                if (unavailable.contains(id)) {
+                    throw new DataAccessResourceFailureException("connection lost");
+                }
+            }
+            predictions.forEach(p -> saved.add(p.getPredictionId()));
+            return null;
+        }).when(repository).insertAll(anyList());
+    }
+
+    private List<String> spill(String... ids) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String id : ids) {
+            Prediction prediction = new Prediction();
+            prediction.setPredictionId(id);
+            prediction.setModelId("model");
+            prediction.setPredictedSegment(0);
+            lines.add(objectMapper.writeValueAsString(prediction));
+        }
+        Files.write(spillFile, lines, StandardCharsets.UTF_8);
+        return lines;
+    }
+
+    private Path replayFile() {
+        return Path.of(spillFile + ".replay");
+    }
+
+    private Path deadLetterFile() {
+        return Path.of(spillFile + ".dead");
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.customer_analysis.service;
+
+import com.example.customer_analysis.config.MLConfig;
+import com.example.customer_analysis.entity.MLModel;
+import com.example.customer_analysis.entity.Prediction;
+import com.example.customer_analysis.repository.MLModelRepository;
+import com.example.customer_analysis.repository.PredictionBatchRepository;
+import com.example.customer_analysis.repository.SegmentRepository;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+class PredictionBatchTests {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final PredictionBatchRepository batchRepository = mock(PredictionBatchRepository.class);
+    private PredictionModelService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Path modelPath = tempDir.resolve("model.model");
+        CentroidModel.of(List.of("Income", "MntWines"), new double[]{0, 0}, new double[]{100, 100},
+                new int[]{0, 1}, new double[][]{{0.1, 0.1}, {0.9, 0.9}}).write(modelPath);
+        MLModel mlModel = new MLModel();
+        mlModel.setModelId("test-model");
+        mlModel.setModelPath(modelPath.toString());
+
+        MLModelRepository modelRepository = mock(MLModelRepository.class);
+        when(modelRepository.findFirstByIsActiveTrueOrderByTrainedAtDesc()).thenReturn(Optional.of(mlModel));
+        SegmentRepository segmentRepository = mock(SegmentRepository.class);
+        when(segmentRepository.findAll()).thenReturn(List.of());
+
+        MLConfig mlConfig = new MLConfig();
+        mlConfig.setPredictionBatchSize(2);
+
+        service = new PredictionModelService();
+        ReflectionTestUtils.setField(service, "mlModelRepository", modelRepository);
+        ReflectionTestUtils.setField(service, "segmentRepository", segmentRepository);
+        ReflectionTestUtils.setField(service, "predictionBatchRepository", batchRepository);
+        ReflectionTestUtils.setField(service, "mlConfig", mlConfig);
+        ReflectionTestUtils.setField(service, "webObjectMapper", objectMapper);
+    }
+
+    @Test
+    void malformedRequestMidInputSavesEarlierRowsAndEndsWithTrailer() throws IOException {
+        String body = "[{\"income\": 10, \"mntWines\": 5}, {\"income\": 90, \"mntWines\": 95},"
+                + " {\"income\": 12, \"mntWines\": 8}, {\"income\": 1,, \"mntWines\": 2},"
+                + " {\"income\": 50, \"mntWines\": 50}]";
+
+        JsonNode output = run(body, false);
+
+        assertTrue(output.isArray());
+        assertEquals(4, output.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(output.get(i).hasNonNull("predictionId"));
+        }
+        JsonNode trailer = output.get(3);
+        assertTrue(trailer.get("error").asText().contains("index 3"));
+        assertEquals(3, trailer.get("savedCount").asInt());
+        assertEquals(3, savedPredictions().size());
+    }
+
+    @Test
+    void malformedNdjsonLineEndsWithTrailer() throws IOException {
+        String body = "{\"income\": 10, \"mntWines\": 5}\n{\"income\": \"not a number\"}\n{\"income\": 90}\n";
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int saved = service.predictBatch(open(body, true), true, output);
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(1, saved);
+        assertEquals(2, lines.length);
+        JsonNode trailer = objectMapper.readTree(lines[1]);
+        assertEquals(1, trailer.get("savedCount").asInt());
+    }
+
+    @Test
+    void failedInsertReportsOnlyRowsAlreadySaved() throws IOException {
+        doNothing().doThrow(new IllegalStateException("database down")).when(batchRepository).insertAll(anyList());
+        String body = "[{\"income\": 10}, {\"income\": 20}, {\"income\": 30}, {\"income\": 40}]";
+
+        JsonNode output = run(body, false);
+
+        assertEquals(3, output.size());
+        assertEquals(2, output.get(2).get("savedCount").asInt());
+        assertTrue(output.get(2).get("error").asText().contains("database down"));
+    }
+
+    private JsonNode run(String body, boolean ndjson) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        service.predictBatch(open(body, ndjson), ndjson, output);
+        return objectMapper.readTree(output.toByteArray());
+    }
+
+    private JsonParser open(String body, boolean ndjson) throws IOException {
+        return service.openBatch(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), ndjson);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Prediction> savedPredictions() {
+        ArgumentCaptor<List<Prediction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(batchRepository, atLeastOnce()).insertAll(captor.capture());
+        List<Prediction> saved = new ArrayList<>();
+        captor.getAllValues().forEach(saved::addAll);
+        return saved;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.customer_analysis.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SegmentAccumulatorTests {
+
+    private static final List<String> COLUMNS = new ArrayList<>(FeatureMatrix.customerColumns());
+    private static final int SEGMENTS = 4;
+
+    @Test
+    void statisticsMatchBruteForceOverSeveralBatches() {
+        Random random = new Random(42);
+        ClusteringService.SegmentAccumulator accumulator = new ClusteringService.SegmentAccumulator(SEGMENTS);
+        List<double[]> rows = new ArrayList<>();
+        List<Integer> labels = new ArrayList<>();
+
+        for (int size : new int[]{700, 1, 1300}) {
+            ColumnBatch batch = new ColumnBatch(COLUMNS, size);
+            int[] batchLabels = new int[size];
+            for (int i = 0; i < size; i++) {
+                double[] row = new double[COLUMNS.size()];
+                for (int c = 0; c < row.length; c++) {
+                    // Large offsets make a naive sum-of-squares variance lose precision
+                    row[c] = COLUMNS.get(c).startsWith("AcceptedCmp")
+                            ? random.nextInt(2)
+                            : 1e6 + random.nextDouble() * 1000;
+                    batch.numbers(COLUMNS.get(c))[i] = row[c];
+                    batch.presence(c)[i] = true;
+                }
+                batchLabels[i] = random.nextInt(SEGMENTS);
+                rows.add(row);
+                labels.add(batchLabels[i]);
+            }
+            accumulator.add(batch, batchLabels);
+        }
+
+        for (String metric : List.of("Income", "MntWines", "TotalSpending", "TotalCampaigns")) {
+            for (int s = 0; s < SEGMENTS; s++) {
+                List<Double> values = new ArrayList<>();
+                for (int r = 0; r < rows.size(); r++) {
+                    if (labels.get(r) == s) {
+                        values.add(metricValue(metric, rows.get(r)));
+                    }
+                }
+                double mean = values.stream().mapToDouble(Double::doubleValue).sum() / values.size();
+                double variance = values.stream().mapToDouble(v -> (v - mean) * (v - mean)).sum() / values.size();
+
+                assertEquals(values.size(), accumulator.count(s));
+                assertEquals(mean, accumulator.mean(metric, s), Math.abs(mean) * 1e-12 + 1e-12);
+                Map<?, ?> stats = (Map<?, ?>) accumulator.characteristics(s).get(metric);
+                assertEquals(variance, (double) stats.get("variance"), variance * 1e-9 + 1e-12);
+                assertEquals(values.stream().mapToDouble(Double::doubleValue).min().orElseThrow(),
+                        (double) stats.get("min"));
+                assertEquals(values.stream().mapToDouble(Double::doubleValue).max().orElseThrow(),
+                        (double) stats.get("max"));
+            }
+        }
+    }
+
+    private static double metricValue(String metric, double[] row) {
+        double sum = 0;
+        for (String column : FeatureMatrix.columnsOf(metric)) {
+            sum += row[COLUMNS.indexOf(column)];
+        }
+        return sum;
+    }
+}
@@ -22,4 +22,12 @@ export interface CustomerDTO {
   segment: number | null;
   totalSpending: number | null;
   totalCampaignAccepted: number | null;
-}
\ No newline at end of file
+}
+
+// One page of /analysis/customers; pass nextCursor back to get the next page
+export interface CustomerPageDTO {
+  customers: CustomerDTO[];
+  size: number;
+  hasMore: boolean;
+  nextCursor: string | null;
+}
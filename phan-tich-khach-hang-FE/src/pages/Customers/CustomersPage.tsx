@@ -18,6 +18,8 @@ import { FileFilter } from '../../components/FileFilter';
 
 const CustomersPage: React.FC = () => {
   const [customers, setCustomers] = useState<CustomerDTO[]>([]);
+  const [nextCursor, setNextCursor] = useState<string | null>(null);
+  const [loadingMore, setLoadingMore] = useState(false);
   const [segments, setSegments] = useState<SegmentDTO[]>([]);
   const [loading, setLoading] = useState(true);
   const [selectedSegment, setSelectedSegment] = useState<number | undefined>(undefined);
@@ -31,11 +33,12 @@ const CustomersPage: React.FC = () => {
   const fetchData = async () => {
     try {
       setLoading(true);
-      const [customersData, segmentsData] = await Promise.all([
+      const [customersPage, segmentsData] = await Promise.all([
         getCustomers(selectedSegment, undefined, selectedFile),
         getSegments(selectedFile),
       ]);
-      setCustomers(customersData);
+      setCustomers(customersPage.customers);
+      setNextCursor(customersPage.hasMore ? customersPage.nextCursor : null);
       setSegments(segmentsData);
     } catch (error) {
       console.error('Error fetching data:', error);
@@ -44,10 +47,22 @@ const CustomersPage: React.FC = () => {
     }
   };
 
+  const loadMore = async () => {
+    if (!nextCursor) return;
+    try {
+      setLoadingMore(true);
+      const page = await getCustomers(selectedSegment, undefined, selectedFile, nextCursor);
+      setCustomers(prev => [...prev, ...page.customers]);
+      setNextCursor(page.hasMore ? page.nextCursor : null);
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const filteredCustomers = customers.filter(customer =>
     customer.id.toString().includes(searchTerm) ||
-    customer.education.toLowerCase().includes(searchTerm.toLowerCase()) ||
-    customer.maritalStatus.toLowerCase().includes(searchTerm.toLowerCase())
+    customer.education?.toLowerCase().includes(searchTerm.toLowerCase()) ||
+    customer.maritalStatus?.toLowerCase().includes(searchTerm.toLowerCase())
   );
 
   const barData = {
@@ -133,7 +148,7 @@ const CustomersPage: React.FC = () => {
                 </td>
               </tr>
             ) : (
-              filteredCustomers.slice(0, 50).map((customer) => {
+              filteredCustomers.map((customer) => {
                 const segment = segments.find(s => s.segmentId === customer.segment);
                 return (
                   <tr key={customer.id} className="border-t hover:bg-gray-50 cursor-pointer" onClick={() => window.location.href = `/customers/${customer.id}`}>
@@ -154,9 +169,15 @@ const CustomersPage: React.FC = () => {
             )}
           </tbody>
         </table>
-        {filteredCustomers.length > 50 && (
+        {nextCursor && (
           <div className="py-4 px-4 text-center text-sm text-gray-500 border-t">
-            Hiển thị 50/{filteredCustomers.length} khách hàng
+            <button
+              className="px-4 py-2 rounded-lg bg-gray-100 text-gray-700 hover:bg-gray-200 disabled:opacity-50"
+              onClick={loadMore}
+              disabled={loadingMore}
+            >
+              {loadingMore ? 'Đang tải...' : `Tải thêm (đã hiển thị ${customers.length} khách hàng)`}
+            </button>
           </div>
         )}
       </div>
@@ -3,7 +3,7 @@ import { SegmentDTO, ClusterResponse } from '../model/cluster_model';
 import { UploadResponse, ClusterRequest } from '../model/file_upload';
 import { DashboardDTO } from '../model/dashboard_model';
 import { InsightDTO } from '../model/insight_model';
-import { CustomerDTO } from '../model/customer_model';
+import { CustomerDTO, CustomerPageDTO } from '../model/customer_model';
 import { TrainModelRequest, TrainModelResponse, PredictRequest, PredictResponse } from '../model/predict_model';
 import { ReportGenerationResponse } from '../model/report_model';
 
@@ -75,20 +75,21 @@ export const getDashboard = async (fileName?: string): Promise<DashboardDTO> =>
   }
 };
 
-// Get all customers with optional filters
-export const getCustomers = async (segment?: number, maritalStatus?: string, fileName?: string): Promise<CustomerDTO[]> => {
+// Get one page of customers with optional filters; pass the previous page's nextCursor to continue
+export const getCustomers = async (segment?: number, maritalStatus?: string, fileName?: string, cursor?: string): Promise<CustomerPageDTO> => {
   try {
     const params: any = {};
     if (segment !== undefined) params.segment = segment;
     if (maritalStatus) params.maritalStatus = maritalStatus;
     if (fileName) params.fileName = fileName;
+    if (cursor) params.cursor = cursor;
     
     const response = await api.get('/analysis/customers', { params });
     console.log("Customer response: ",response.data);
     return response.data;
   } catch (error) {
     console.error('Error fetching customers:', error);
-    return [];
+    return { customers: [], size: 0, hasMore: false, nextCursor: null };
   }
 };
 